@@ -0,0 +1,25 @@
+package com.vilt.spring.remoting.crosscontext.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected in the command line, as
+ * <code>org.openjdk.jmh.Main</code> does, always with the GC profiler so that
+ * allocation rates are reported next to the timings.
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions options = new CommandLineOptions(args);
+		if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+				|| options.shouldListProfilers() || options.shouldListResultFormats()) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+	}
+
+}
@@ -0,0 +1,110 @@
+package com.vilt.spring.remoting.crosscontext.benchmark;
+
+import java.io.IOException;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+
+import com.vilt.spring.context.response.RequestAndResponseHolder;
+import com.vilt.spring.remoting.crosscontext.CrossContextProxyBeanFactory;
+import com.vilt.spring.remoting.crosscontext.CrossContextServiceExporter;
+
+/**
+ * Wires a {@link CrossContextProxyBeanFactory} to a
+ * {@link CrossContextServiceExporter} through mock servlet contexts, the same
+ * way <code>CrossContextRemotingTest</code> does, but without mocking
+ * frameworks in the invocation path.
+ */
+public class CrossContextFixture {
+
+	public static final String CONTEXT_PATH = "/remote";
+	public static final String SERVICE_PATH = "/echo";
+
+	private final MockServletContext localContext = new MockServletContext();
+	private final MockServletContext remoteContext;
+	private final CrossContextServiceExporter exporter = new CrossContextServiceExporter();
+	private final MockHttpServletRequest request = new MockHttpServletRequest(localContext);
+	private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+	public CrossContextFixture() throws Exception {
+		exporter.setServiceInterface(EchoService.class);
+		exporter.setService(new EchoServiceImpl());
+
+		final RequestDispatcher dispatcher = new RequestDispatcher() {
+			public void forward(ServletRequest request, ServletResponse response) {
+				throw new UnsupportedOperationException();
+			}
+
+			public void include(ServletRequest request, ServletResponse response) throws ServletException, IOException {
+				exporter.handleRequest((HttpServletRequest) request, (HttpServletResponse) response);
+			}
+		};
+		remoteContext = new MockServletContext() {
+			@Override
+			public RequestDispatcher getRequestDispatcher(String path) {
+				return dispatcher;
+			}
+		};
+		remoteContext.setContextPath(CONTEXT_PATH);
+		localContext.registerContext(CONTEXT_PATH, remoteContext);
+	}
+
+	/**
+	 * Returns the exporter, to be configured before
+	 * {@link #initExporter()}.
+	 */
+	public CrossContextServiceExporter getExporter() {
+		return exporter;
+	}
+
+	public void initExporter() throws Exception {
+		exporter.afterPropertiesSet();
+	}
+
+	/**
+	 * Returns a new proxy factory for the exporter, to be configured and then
+	 * initialized with {@link CrossContextProxyBeanFactory#afterPropertiesSet()}.
+	 */
+	public CrossContextProxyBeanFactory newProxyFactory() {
+		CrossContextProxyBeanFactory factory = new CrossContextProxyBeanFactory();
+		factory.setServiceUrl(CONTEXT_PATH + SERVICE_PATH);
+		factory.setServiceInterface(EchoService.class);
+		factory.setServletContext(localContext);
+		return factory;
+	}
+
+	public MockHttpServletRequest getRequest() {
+		return request;
+	}
+
+	/**
+	 * Binds the request and response to the current thread, as the
+	 * RequestAndResponseContextFilter would.
+	 */
+	public void bind() {
+		RequestAndResponseHolder.setHttpServletRequest(request);
+		RequestAndResponseHolder.setHttpServletResponse(response);
+	}
+
+	/**
+	 * Binds a request and response of its own to the current thread, for
+	 * benchmarks where several threads share the fixture.
+	 */
+	public void bindNewRequest() {
+		RequestAndResponseHolder.setHttpServletRequest(new MockHttpServletRequest(localContext));
+		RequestAndResponseHolder.setHttpServletResponse(new MockHttpServletResponse());
+	}
+
+	public void unbind() {
+		RequestAndResponseHolder.resetHttpServletRequestAndResponse();
+	}
+
+}
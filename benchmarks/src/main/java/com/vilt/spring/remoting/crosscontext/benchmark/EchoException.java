@@ -0,0 +1,11 @@
+package com.vilt.spring.remoting.crosscontext.benchmark;
+
+public class EchoException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	public EchoException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,16 @@
+package com.vilt.spring.remoting.crosscontext.benchmark;
+
+/**
+ * Service invoked by the benchmarks.
+ */
+public interface EchoService {
+
+	int add(int first, int second);
+
+	String echo(String value);
+
+	Payload echoPayload(Payload payload);
+
+	void fail() throws EchoException;
+
+}
@@ -0,0 +1,21 @@
+package com.vilt.spring.remoting.crosscontext.benchmark;
+
+public class EchoServiceImpl implements EchoService {
+
+	public int add(int first, int second) {
+		return first + second;
+	}
+
+	public String echo(String value) {
+		return value;
+	}
+
+	public Payload echoPayload(Payload payload) {
+		return payload;
+	}
+
+	public void fail() throws EchoException {
+		throw new EchoException("failed");
+	}
+
+}
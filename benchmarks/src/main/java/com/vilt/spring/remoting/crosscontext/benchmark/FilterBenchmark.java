@@ -0,0 +1,125 @@
+package com.vilt.spring.remoting.crosscontext.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+
+import com.vilt.spring.context.response.RequestAndResponseContextFilter;
+import com.vilt.spring.context.response.RequestAndResponseHolder;
+
+/**
+ * Compares the request and response context filter, tracking re-entrance per
+ * thread or with a request attribute, against the previous implementation,
+ * which built the attribute name and bound the request and response
+ * separately on every request. Each request includes a page of the same
+ * context, re-entering the filter once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FilterBenchmark {
+
+	public enum Tracking {
+		THREAD, ATTRIBUTE, PREVIOUS
+	}
+
+	@Param({ "THREAD", "ATTRIBUTE", "PREVIOUS" })
+	public Tracking tracking;
+
+	private final MockServletContext servletContext = new MockServletContext();
+	private final MockHttpServletRequest request = new MockHttpServletRequest(servletContext);
+	private final MockHttpServletResponse response = new MockHttpServletResponse();
+	private Filter filter;
+	private FilterChain chain;
+
+	@Setup
+	public void setUp() throws ServletException {
+		if (tracking == Tracking.PREVIOUS) {
+			filter = new PreviousContextFilter();
+		} else {
+			RequestAndResponseContextFilter contextFilter = new RequestAndResponseContextFilter();
+			contextFilter.setTrackWithRequestAttribute(tracking == Tracking.ATTRIBUTE);
+			filter = contextFilter;
+		}
+		filter.init(new MockFilterConfig(servletContext, "requestAndResponseContextFilter"));
+
+		final FilterChain includeChain = new FilterChain() {
+			public void doFilter(ServletRequest request, ServletResponse response) {
+			}
+		};
+		chain = new FilterChain() {
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+				filter.doFilter(request, response, includeChain);
+			}
+		};
+	}
+
+	@Benchmark
+	public Object filter() throws IOException, ServletException {
+		filter.doFilter(request, response, chain);
+		return request;
+	}
+
+	/**
+	 * The filter as it was before re-entrance could be tracked per thread.
+	 */
+	private static class PreviousContextFilter implements Filter {
+
+		private FilterConfig filterConfig;
+
+		public void init(FilterConfig filterConfig) {
+			this.filterConfig = filterConfig;
+		}
+
+		public void doFilter(ServletRequest request, ServletResponse response, FilterChain filterChain) throws IOException, ServletException {
+			String alreadyFilteredAttributeName = filterConfig.getFilterName() + "." + filterConfig.getServletContext() + ".FILTERED";
+			if (request.getAttribute(alreadyFilteredAttributeName) != null) {
+				filterChain.doFilter(request, response);
+				return;
+			}
+			request.setAttribute(alreadyFilteredAttributeName, Boolean.TRUE);
+			try {
+				RequestAndResponseHolder.setHttpServletRequest((HttpServletRequest) request);
+				RequestAndResponseHolder.setHttpServletResponse((HttpServletResponse) response);
+				try {
+					filterChain.doFilter(request, response);
+				} finally {
+					RequestAndResponseHolder.resetHttpServletRequestAndResponse();
+				}
+			} finally {
+				request.removeAttribute(alreadyFilteredAttributeName);
+			}
+		}
+
+		public void destroy() {
+		}
+	}
+
+}
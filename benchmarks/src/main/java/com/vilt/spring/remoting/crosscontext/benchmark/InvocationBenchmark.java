@@ -0,0 +1,95 @@
+package com.vilt.spring.remoting.crosscontext.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vilt.spring.remoting.crosscontext.CrossContextProxyBeanFactory;
+
+/**
+ * Measures a single threaded invocation through the proxy and the exporter,
+ * with and without serialization, for small and large argument graphs,
+ * exception results and requests carrying many attributes, which the proxy
+ * backs up and restores around each call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InvocationBenchmark {
+
+	@Param({ "true", "false" })
+	public boolean serialize;
+
+	/**
+	 * Width of the payload graph, which holds width * (width + 1) + 1 nodes.
+	 */
+	@Param({ "1", "30" })
+	public int payloadWidth;
+
+	/**
+	 * Number of attributes in the calling request.
+	 */
+	@Param({ "0", "100" })
+	public int requestAttributes;
+
+	private CrossContextFixture fixture;
+	private EchoService service;
+	private Payload payload;
+
+	@Setup
+	public void setUp() throws Exception {
+		fixture = new CrossContextFixture();
+		fixture.getExporter().setSerialize(serialize);
+		fixture.initExporter();
+		for (int i = 0; i < requestAttributes; i++) {
+			fixture.getRequest().setAttribute("attribute-" + i, Integer.valueOf(i));
+		}
+		fixture.bind();
+
+		CrossContextProxyBeanFactory factory = fixture.newProxyFactory();
+		factory.setSerialize(serialize);
+		factory.afterPropertiesSet();
+		service = (EchoService) factory.getObject();
+		payload = Payload.create(payloadWidth);
+	}
+
+	@TearDown
+	public void tearDown() {
+		fixture.unbind();
+	}
+
+	@Benchmark
+	public int primitives() {
+		return service.add(1, 2);
+	}
+
+	@Benchmark
+	public Payload payload() {
+		return service.echoPayload(payload);
+	}
+
+	@Benchmark
+	public Object exception() {
+		try {
+			service.fail();
+			return null;
+		} catch (EchoException e) {
+			return e;
+		}
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.vilt.spring.remoting.crosscontext.benchmark;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DTO graph of configurable size.
+ */
+public class Payload implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private String name;
+	private long id;
+	private BigDecimal amount;
+	private List<Payload> children = new ArrayList<Payload>();
+
+	public Payload() {
+	}
+
+	public Payload(String name, long id) {
+		this.name = name;
+		this.id = id;
+		this.amount = BigDecimal.valueOf(id, 2);
+	}
+
+	/**
+	 * Creates a payload with the given number of children, each one with the
+	 * same number of children of its own.
+	 */
+	public static Payload create(int width) {
+		Payload root = new Payload("root", 0);
+		for (int i = 0; i < width; i++) {
+			Payload child = new Payload("child-" + i, i);
+			for (int j = 0; j < width; j++) {
+				child.children.add(new Payload("grandchild-" + i + "-" + j, j));
+			}
+			root.children.add(child);
+		}
+		return root;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public BigDecimal getAmount() {
+		return amount;
+	}
+
+	public List<Payload> getChildren() {
+		return children;
+	}
+
+}
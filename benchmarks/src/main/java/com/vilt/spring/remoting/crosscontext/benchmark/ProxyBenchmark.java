@@ -0,0 +1,82 @@
+package com.vilt.spring.remoting.crosscontext.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vilt.spring.remoting.crosscontext.CrossContextProxyBeanFactory;
+import com.vilt.spring.remoting.crosscontext.TransferMode;
+
+/**
+ * Compares the Spring AOP proxy against the lightweight proxy, with and
+ * without indexed invocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProxyBenchmark {
+
+	@Param({ "SERIALIZE", "REFERENCE" })
+	public TransferMode transferMode;
+
+	private CrossContextFixture fixture;
+	private EchoService aopProxy;
+	private EchoService lightweightProxy;
+	private EchoService indexedLightweightProxy;
+
+	@Setup
+	public void setUp() throws Exception {
+		fixture = new CrossContextFixture();
+		fixture.getExporter().setTransferMode(transferMode);
+		fixture.initExporter();
+		fixture.bind();
+
+		aopProxy = createProxy(false, false);
+		lightweightProxy = createProxy(true, false);
+		indexedLightweightProxy = createProxy(true, true);
+	}
+
+	@TearDown
+	public void tearDown() {
+		fixture.unbind();
+	}
+
+	private EchoService createProxy(boolean lightweight, boolean indexed) throws Exception {
+		CrossContextProxyBeanFactory factory = fixture.newProxyFactory();
+		factory.setTransferMode(transferMode);
+		factory.setLightweightProxy(lightweight);
+		factory.setUseMethodIndex(indexed);
+		factory.afterPropertiesSet();
+		return (EchoService) factory.getObject();
+	}
+
+	@Benchmark
+	public int aopProxy() {
+		return aopProxy.add(1, 2);
+	}
+
+	@Benchmark
+	public int lightweightProxy() {
+		return lightweightProxy.add(1, 2);
+	}
+
+	@Benchmark
+	public int indexedLightweightProxy() {
+		return indexedLightweightProxy.add(1, 2);
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.vilt.spring.remoting.crosscontext.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vilt.spring.remoting.crosscontext.CrossContextProxyBeanFactory;
+
+/**
+ * Measures the throughput of concurrent invocations through a single proxy
+ * and exporter, each thread with a request of its own as it happens in a
+ * servlet container.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ThroughputBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class SharedService {
+
+		@Param({ "true", "false" })
+		public boolean serialize;
+
+		private CrossContextFixture fixture;
+		private EchoService service;
+
+		@Setup
+		public void setUp() throws Exception {
+			fixture = new CrossContextFixture();
+			fixture.getExporter().setSerialize(serialize);
+			fixture.initExporter();
+
+			CrossContextProxyBeanFactory factory = fixture.newProxyFactory();
+			factory.setSerialize(serialize);
+			factory.afterPropertiesSet();
+			service = (EchoService) factory.getObject();
+		}
+
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadRequest {
+
+		private CrossContextFixture fixture;
+
+		@Setup
+		public void setUp(SharedService shared) {
+			fixture = shared.fixture;
+			fixture.bindNewRequest();
+		}
+
+		@TearDown
+		public void tearDown() {
+			fixture.unbind();
+		}
+
+	}
+
+	@Benchmark
+	public int primitives(SharedService shared, ThreadRequest request) {
+		return shared.service.add(1, 2);
+	}
+
+	@Benchmark
+	public String strings(SharedService shared, ThreadRequest request) {
+		return shared.service.echo("value");
+	}
+
+}
@@ -27,6 +27,7 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.springframework.core.NamedThreadLocal;
 import org.springframework.web.filter.GenericFilterBean;
 
 /**
@@ -35,9 +36,14 @@ import org.springframework.web.filter.GenericFilterBean;
  * HttpServletRequest and HttpServletResponse arguments.
  * 
  * <p>
- * The {@link #getAlreadyFilteredAttributeName} method determines how to
- * identify that a request is already filtered. The default implementation is
- * based on the configured name of the concrete filter instance.
+ * By default, a request is known to be already filtered when the filter is
+ * re-entered by the thread it's running on, as it is by includes and forwards
+ * within its servlet context, without touching request attributes. When
+ * {@link #setTrackWithRequestAttribute(boolean) tracking with a request
+ * attribute}, the {@link #getAlreadyFilteredAttributeName} method determines
+ * how to identify that a request is already filtered. The default
+ * implementation is based on the configured name of the concrete filter
+ * instance.
  * 
  * @author Juergen Hoeller
  * @author Ricardo Santos
@@ -53,10 +59,40 @@ public abstract class OncePerRequestContextFilter extends GenericFilterBean {
 	 */
 	public static final String ALREADY_FILTERED_SUFFIX = ".FILTERED";
 
+	private final ThreadLocal<Boolean> filtering = new NamedThreadLocal<Boolean>("Filtering request context");
+
+	private boolean trackWithRequestAttribute = false;
+
+	private String alreadyFilteredAttributeName;
+
 	/**
-	 * This <code>doFilter</code> implementation stores a request attribute for
-	 * "already filtered", proceeding without filtering again if the attribute
-	 * is already there.
+	 * Set whether requests already filtered are identified by a request
+	 * attribute, visible to the application, instead of by the thread running
+	 * the filter. Default is <code>false</code>.
+	 * 
+	 * @see #getAlreadyFilteredAttributeName
+	 */
+	public void setTrackWithRequestAttribute(boolean trackWithRequestAttribute) {
+		this.trackWithRequestAttribute = trackWithRequestAttribute;
+	}
+
+	public boolean isTrackWithRequestAttribute() {
+		return trackWithRequestAttribute;
+	}
+
+	/**
+	 * Computes the "already filtered" request attribute name once, since the
+	 * servlet context name may be expensive to build.
+	 */
+	@Override
+	protected void initFilterBean() throws ServletException {
+		this.alreadyFilteredAttributeName = getAlreadyFilteredAttributeName();
+	}
+
+	/**
+	 * This <code>doFilter</code> implementation marks the current thread, or
+	 * stores a request attribute, for "already filtered", proceeding without
+	 * filtering again if the mark is already there.
 	 * 
 	 * @see #getAlreadyFilteredAttributeName
 	 * @see #doFilterInternal
@@ -68,7 +104,25 @@ public abstract class OncePerRequestContextFilter extends GenericFilterBean {
 		HttpServletRequest httpRequest = (HttpServletRequest) request;
 		HttpServletResponse httpResponse = (HttpServletResponse) response;
 
-		String alreadyFilteredAttributeName = getAlreadyFilteredAttributeName();
+		if (!trackWithRequestAttribute) {
+			if (filtering.get() != null) {
+				// Proceed without invoking this filter...
+				filterChain.doFilter(request, response);
+				return;
+			}
+			filtering.set(TRUE);
+			try {
+				doFilterInternal(httpRequest, httpResponse, filterChain);
+			} finally {
+				filtering.remove();
+			}
+			return;
+		}
+
+		String alreadyFilteredAttributeName = this.alreadyFilteredAttributeName;
+		if (alreadyFilteredAttributeName == null) {
+			alreadyFilteredAttributeName = getAlreadyFilteredAttributeName();
+		}
 		if (request.getAttribute(alreadyFilteredAttributeName) != null) {
 			// Proceed without invoking this filter...
 			filterChain.doFilter(request, response);
@@ -87,7 +141,8 @@ public abstract class OncePerRequestContextFilter extends GenericFilterBean {
 
 	/**
 	 * Return the name of the request attribute that identifies that a request
-	 * is already filtered.
+	 * is already filtered, when tracking with a request attribute. Called once,
+	 * when the filter is initialized.
 	 * <p>
 	 * Default implementation appends the configured name of the concrete filter
 	 * instance, the configured servlet context name and "FILTERED" separated by
@@ -0,0 +1,124 @@
+package com.vilt.spring.context.response;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * The HttpServletRequest and HttpServletResponse bound together to a thread
+ * by {@link RequestAndResponseHolder}.
+ * 
+ * <p>
+ * The request and response of an instance never change, so binding them, and
+ * later restoring the previous ones, takes a single update of the holder.
+ * Callbacks may be registered to run when the request completes.
+ * 
+ * <p>
+ * Request and response handed over to other threads are bound as a
+ * {@link #propagate() propagated} instance, which doesn't own them: the
+ * request keeps being served by the thread of its container, so it may only
+ * be read, and those threads must not dispatch through it. The locale of the
+ * request is taken when propagating, for threads that need it.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see RequestAndResponseHolder#bind(RequestAndResponse)
+ */
+public final class RequestAndResponse {
+
+	private final HttpServletRequest request;
+	private final HttpServletResponse response;
+	private final RequestAndResponse owner;
+	private final Locale locale;
+	private List<Runnable> completionCallbacks;
+
+	public RequestAndResponse(HttpServletRequest request, HttpServletResponse response) {
+		this(request, response, null, null);
+	}
+
+	private RequestAndResponse(HttpServletRequest request, HttpServletResponse response, RequestAndResponse owner, Locale locale) {
+		this.request = request;
+		this.response = response;
+		this.owner = owner;
+		this.locale = locale;
+	}
+
+	/**
+	 * Returns the request and response to bind to another thread, marked as
+	 * not owning them.
+	 */
+	public RequestAndResponse propagate() {
+		if (owner != null) {
+			return this;
+		}
+		Locale locale = request != null ? request.getLocale() : Locale.getDefault();
+		return new RequestAndResponse(request, response, this, locale);
+	}
+
+	/**
+	 * Returns whether these request and response were handed over from the
+	 * thread serving them.
+	 */
+	public boolean isPropagated() {
+		return owner != null;
+	}
+
+	/**
+	 * Returns the locale of the request, as taken when propagated, or the
+	 * default locale if there's no request.
+	 */
+	public Locale getLocale() {
+		if (locale != null) {
+			return locale;
+		}
+		return request != null ? request.getLocale() : Locale.getDefault();
+	}
+
+	public HttpServletRequest getRequest() {
+		return request;
+	}
+
+	public HttpServletResponse getResponse() {
+		return response;
+	}
+
+	/**
+	 * Registers a callback to run when the request completes, before the
+	 * {@link RequestAndResponseContextFilter} that bound this request and
+	 * response unbinds them. Callbacks registered on propagated request and
+	 * response are registered on the ones they were propagated from;
+	 * callbacks registered on request and response bound any other way never
+	 * run.
+	 */
+	public void registerCompletionCallback(Runnable callback) {
+		if (owner != null) {
+			owner.registerCompletionCallback(callback);
+			return;
+		}
+		synchronized (this) {
+			if (completionCallbacks == null) {
+				completionCallbacks = new ArrayList<Runnable>();
+			}
+			completionCallbacks.add(callback);
+		}
+	}
+
+	/**
+	 * Returns the registered completion callbacks, forgetting them.
+	 */
+	synchronized List<Runnable> takeCompletionCallbacks() {
+		List<Runnable> callbacks = completionCallbacks;
+		completionCallbacks = null;
+		return callbacks != null ? callbacks : Collections.<Runnable> emptyList();
+	}
+
+	@Override
+	public String toString() {
+		return "{" + request + "," + response + (owner != null ? ",propagated" : "") + "}";
+	}
+
+}
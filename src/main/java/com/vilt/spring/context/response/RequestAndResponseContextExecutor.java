@@ -0,0 +1,38 @@
+package com.vilt.spring.context.response;
+
+import java.util.concurrent.Executor;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link Executor} that runs the tasks of its delegate with the request and
+ * response bound to the submitting thread, restoring whatever the executing
+ * thread had bound afterwards.
+ * 
+ * <p>
+ * This lets work started while serving a request, such as calls to cross
+ * context proxies, be spread over several threads.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see RequestAndResponseHolder#wrap(Runnable)
+ * @see RequestAndResponseContextExecutorService
+ */
+public class RequestAndResponseContextExecutor implements Executor {
+
+	private final Executor delegate;
+
+	public RequestAndResponseContextExecutor(Executor delegate) {
+		Assert.notNull(delegate, "Delegate executor must not be null");
+		this.delegate = delegate;
+	}
+
+	public void execute(Runnable command) {
+		delegate.execute(RequestAndResponseHolder.wrap(command));
+	}
+
+	public Executor getDelegate() {
+		return delegate;
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.vilt.spring.context.response;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link ExecutorService} that runs the tasks of its delegate with the
+ * request and response bound to the submitting thread, restoring whatever the
+ * executing thread had bound afterwards. Tasks submitted, or invoked in bulk,
+ * all go through {@link #execute(Runnable)}, on the submitting thread.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see RequestAndResponseHolder#wrap(Runnable)
+ * @see RequestAndResponseContextExecutor
+ */
+public class RequestAndResponseContextExecutorService extends AbstractExecutorService {
+
+	private final ExecutorService delegate;
+
+	public RequestAndResponseContextExecutorService(ExecutorService delegate) {
+		Assert.notNull(delegate, "Delegate executor service must not be null");
+		this.delegate = delegate;
+	}
+
+	public void execute(Runnable command) {
+		delegate.execute(RequestAndResponseHolder.wrap(command));
+	}
+
+	public void shutdown() {
+		delegate.shutdown();
+	}
+
+	public List<Runnable> shutdownNow() {
+		return delegate.shutdownNow();
+	}
+
+	public boolean isShutdown() {
+		return delegate.isShutdown();
+	}
+
+	public boolean isTerminated() {
+		return delegate.isTerminated();
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return delegate.awaitTermination(timeout, unit);
+	}
+
+	public ExecutorService getDelegate() {
+		return delegate;
+	}
+
+}
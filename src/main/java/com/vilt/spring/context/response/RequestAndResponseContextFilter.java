@@ -16,7 +16,10 @@ import javax.servlet.http.HttpServletResponse;
  * This class differs from
  * {@link org.springframework.web.filter.RequestContextFilter} in that it is
  * invoked once per Servlet Context, exposing the held objects to a portlet or
- * any other included page.
+ * any other included page. The request and response bound before, if any,
+ * such as those of the including context, are restored afterwards, once the
+ * {@link RequestAndResponse#registerCompletionCallback(Runnable) completion
+ * callbacks} have run.
  * 
  * @author Ricardo Santos
  * @since 27.03.2014
@@ -29,15 +32,22 @@ public class RequestAndResponseContextFilter extends OncePerRequestContextFilter
 
 	@Override
 	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
-		RequestAndResponseHolder.setHttpServletRequest(request);
-		RequestAndResponseHolder.setHttpServletResponse(response);
+		RequestAndResponse requestAndResponse = new RequestAndResponse(request, response);
+		RequestAndResponse previous = RequestAndResponseHolder.bind(requestAndResponse);
 		if (logger.isDebugEnabled()) {
 			logger.debug("Bound request and response to thread: {" + request + "," + response + "}");
 		}
 		try {
 			filterChain.doFilter(request, response);
 		} finally {
-			RequestAndResponseHolder.resetHttpServletRequestAndResponse();
+			for (Runnable callback : requestAndResponse.takeCompletionCallbacks()) {
+				try {
+					callback.run();
+				} catch (RuntimeException e) {
+					logger.warn("Request completion callback failed", e);
+				}
+			}
+			RequestAndResponseHolder.restore(previous);
 			if (logger.isDebugEnabled()) {
 				logger.debug("Cleared thread-bound request and response: {" + request + "," + response + "}");
 			}
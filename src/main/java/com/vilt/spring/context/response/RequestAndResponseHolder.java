@@ -1,9 +1,11 @@
 package com.vilt.spring.context.response;
 
+import java.util.concurrent.Callable;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.springframework.core.NamedThreadLocal;
+import org.springframework.util.Assert;
 
 /**
  * Holder class to expose the web request and response in the form of a
@@ -13,6 +15,14 @@ import org.springframework.core.NamedThreadLocal;
  * Use {@link RequestAndResponseContextFilter} to expose the current web request
  * and response on any request context.
  * 
+ * <p>
+ * The request and response are bound together, as a single
+ * {@link RequestAndResponse}, and stored by a pluggable
+ * {@link RequestAndResponseHolderStrategy}. Tasks handed over to other
+ * threads can take them along with {@link #wrap(Runnable)},
+ * {@link RequestAndResponseContextExecutor} or
+ * {@link RequestAndResponseContextExecutorService}.
+ * 
  * @author Ricardo Santos
  * @since 2.0
  * @see RequestAndResponseContextFilter
@@ -21,8 +31,104 @@ public class RequestAndResponseHolder {
 	public RequestAndResponseHolder() {
 	}
 
-	private static final ThreadLocal<HttpServletResponse> responseHolder = new NamedThreadLocal<HttpServletResponse>("HttpServletResponse");
-	private static final ThreadLocal<HttpServletRequest> requestHolder = new NamedThreadLocal<HttpServletRequest>("HttpServletRequest");
+	private static volatile RequestAndResponseHolderStrategy strategy = new ThreadLocalRequestAndResponseHolderStrategy();
+
+	/**
+	 * Set the strategy storing the request and response of each thread.
+	 * Default is {@link ThreadLocalRequestAndResponseHolderStrategy}. Must be
+	 * set before any request and response are bound.
+	 */
+	public static void setStrategy(RequestAndResponseHolderStrategy strategy) {
+		Assert.notNull(strategy, "Strategy must not be null");
+		RequestAndResponseHolder.strategy = strategy;
+	}
+
+	public static RequestAndResponseHolderStrategy getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * Bind the given request and response to the current thread, or unbind
+	 * them if <code>null</code>.
+	 * 
+	 * @return the request and response previously bound to the thread, to be
+	 *         given to {@link #restore(RequestAndResponse)} afterwards
+	 */
+	public static RequestAndResponse bind(RequestAndResponse requestAndResponse) {
+		RequestAndResponseHolderStrategy strategy = RequestAndResponseHolder.strategy;
+		RequestAndResponse previous = strategy.get();
+		if (requestAndResponse != null) {
+			strategy.set(requestAndResponse);
+		} else if (previous != null) {
+			strategy.clear();
+		}
+		return previous;
+	}
+
+	/**
+	 * Restore the request and response returned by
+	 * {@link #bind(RequestAndResponse)}, unbinding them if there were none.
+	 */
+	public static void restore(RequestAndResponse previous) {
+		if (previous != null) {
+			strategy.set(previous);
+		} else {
+			strategy.clear();
+		}
+	}
+
+	/**
+	 * Returns the request and response currently bound to the thread, or
+	 * <code>null</code> if none bound.
+	 */
+	public static RequestAndResponse getRequestAndResponse() {
+		return strategy.get();
+	}
+
+	/**
+	 * Returns a task that runs the given one with the request and response
+	 * currently bound to the thread, restoring whatever the executing thread
+	 * had bound afterwards. They're bound {@link RequestAndResponse#propagate()
+	 * propagated}, as the request is still served by the current thread.
+	 */
+	public static Runnable wrap(final Runnable task) {
+		final RequestAndResponse requestAndResponse = propagate();
+		return new Runnable() {
+			public void run() {
+				RequestAndResponse previous = bind(requestAndResponse);
+				try {
+					task.run();
+				} finally {
+					restore(previous);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns a task that calls the given one with the request and response
+	 * currently bound to the thread, restoring whatever the executing thread
+	 * had bound afterwards. They're bound {@link RequestAndResponse#propagate()
+	 * propagated}, as the request is still served by the current thread.
+	 */
+	public static <T> Callable<T> wrap(final Callable<T> task) {
+		final RequestAndResponse requestAndResponse = propagate();
+		return new Callable<T>() {
+			public T call() throws Exception {
+				RequestAndResponse previous = bind(requestAndResponse);
+				try {
+					return task.call();
+				} finally {
+					restore(previous);
+				}
+			}
+		};
+	}
+
+	private static RequestAndResponse propagate() {
+		RequestAndResponse requestAndResponse = strategy.get();
+		return requestAndResponse != null ? requestAndResponse.propagate() : null;
+	}
 
 	/**
 	 * Bind the given HttpServletRequest to the current thread.
@@ -31,7 +137,7 @@ public class RequestAndResponseHolder {
 	 *            the HttpServletRequest to expose
 	 */
 	public static void setHttpServletRequest(HttpServletRequest request) {
-		requestHolder.set(request);
+		bind(request, getHttpServletResponse());
 	}
 
 	/**
@@ -41,7 +147,11 @@ public class RequestAndResponseHolder {
 	 *            the HttpServletResponse to expose
 	 */
 	public static void setHttpServletResponse(HttpServletResponse response) {
-		responseHolder.set(response);
+		bind(getHttpServletRequest(), response);
+	}
+
+	private static void bind(HttpServletRequest request, HttpServletResponse response) {
+		bind(request != null || response != null ? new RequestAndResponse(request, response) : null);
 	}
 
 	/**
@@ -51,7 +161,8 @@ public class RequestAndResponseHolder {
 	 *         <code>null</code> if none bound
 	 */
 	public static HttpServletRequest getHttpServletRequest() {
-		return requestHolder.get();
+		RequestAndResponse requestAndResponse = strategy.get();
+		return requestAndResponse != null ? requestAndResponse.getRequest() : null;
 	}
 
 	/**
@@ -61,14 +172,14 @@ public class RequestAndResponseHolder {
 	 *         <code>null</code> if none bound
 	 */
 	public static HttpServletResponse getHttpServletResponse() {
-		return responseHolder.get();
+		RequestAndResponse requestAndResponse = strategy.get();
+		return requestAndResponse != null ? requestAndResponse.getResponse() : null;
 	}
 
 	/**
 	 * Resets the Request and Response for the current thread.
 	 */
 	public static void resetHttpServletRequestAndResponse() {
-		responseHolder.remove();
-		requestHolder.remove();
+		strategy.clear();
 	}
 }
@@ -0,0 +1,31 @@
+package com.vilt.spring.context.response;
+
+/**
+ * Strategy used by {@link RequestAndResponseHolder} to store the
+ * {@link RequestAndResponse} of the current thread.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see RequestAndResponseHolder#setStrategy(RequestAndResponseHolderStrategy)
+ * @see ThreadLocalRequestAndResponseHolderStrategy
+ */
+public interface RequestAndResponseHolderStrategy {
+
+	/**
+	 * Returns the request and response of the current thread, or
+	 * <code>null</code> if none are bound.
+	 */
+	RequestAndResponse get();
+
+	/**
+	 * Binds the given request and response to the current thread.
+	 */
+	void set(RequestAndResponse requestAndResponse);
+
+	/**
+	 * Unbinds the request and response of the current thread, releasing any
+	 * storage kept for it.
+	 */
+	void clear();
+
+}
@@ -0,0 +1,29 @@
+package com.vilt.spring.context.response;
+
+import org.springframework.core.NamedThreadLocal;
+
+/**
+ * {@link RequestAndResponseHolderStrategy} keeping the request and response
+ * in a single thread local, which is removed when they're unbound so that
+ * pooled threads don't retain them. This is the default strategy.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public class ThreadLocalRequestAndResponseHolderStrategy implements RequestAndResponseHolderStrategy {
+
+	private final ThreadLocal<RequestAndResponse> holder = new NamedThreadLocal<RequestAndResponse>("HttpServletRequest and HttpServletResponse");
+
+	public RequestAndResponse get() {
+		return holder.get();
+	}
+
+	public void set(RequestAndResponse requestAndResponse) {
+		holder.set(requestAndResponse);
+	}
+
+	public void clear() {
+		holder.remove();
+	}
+
+}
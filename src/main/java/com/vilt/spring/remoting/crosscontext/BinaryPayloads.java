@@ -0,0 +1,142 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+/**
+ * Envelopes for invocations and results of methods taking or returning
+ * binary payloads, that is byte arrays, byte buffers and input streams, which
+ * are handed over alongside the encoded invocation instead of being encoded
+ * with it.
+ * 
+ * <p>
+ * Binary values are JDK classes, so they're understood by both sides whatever
+ * class loaders each one uses. Byte arrays and input streams are handed over
+ * as they are, and byte buffers as read-only views of their content, so the
+ * bytes are never copied. Byte arrays are shared with the other side, so
+ * neither side should modify them once the call is made. An invocation
+ * envelope holds the encoded invocation, with its binary arguments replaced
+ * by <code>null</code>, and the binary arguments at their positions.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+abstract class BinaryPayloads {
+
+	static final String INVOCATION_MARKER = BinaryPayloads.class.getName() + ".INVOCATION";
+
+	static final String RESULT_MARKER = BinaryPayloads.class.getName() + ".RESULT";
+
+	/**
+	 * Returns whether values of the given type are binary payloads.
+	 */
+	public static boolean isBinaryType(Class<?> type) {
+		return type == byte[].class || ByteBuffer.class.isAssignableFrom(type) || InputStream.class.isAssignableFrom(type);
+	}
+
+	/**
+	 * Returns whether the given method takes or returns binary payloads.
+	 */
+	public static boolean isBinaryMethod(Method method) {
+		if (isBinaryType(method.getReturnType())) {
+			return true;
+		}
+		for (Class<?> parameterType : method.getParameterTypes()) {
+			if (isBinaryType(parameterType)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Replaces the arguments of the given invocation by a copy without its
+	 * binary arguments, which are returned at the same positions.
+	 */
+	public static Object[] detachArguments(RemoteInvocation invocation) {
+		Object[] arguments = invocation.getArguments();
+		Object[] binaries = new Object[arguments.length];
+		Object[] remaining = null;
+		for (int i = 0; i < arguments.length; i++) {
+			if (isBinary(arguments[i])) {
+				if (remaining == null) {
+					remaining = arguments.clone();
+				}
+				binaries[i] = handOver(arguments[i]);
+				remaining[i] = null;
+			}
+		}
+		if (remaining != null) {
+			invocation.setArguments(remaining);
+		}
+		return binaries;
+	}
+
+	public static Object[] wrapInvocation(Object payload, Object[] binaries) {
+		return new Object[] { INVOCATION_MARKER, payload, binaries };
+	}
+
+	public static boolean isInvocation(Object value) {
+		return value instanceof Object[] && ((Object[]) value).length == 3 && INVOCATION_MARKER.equals(((Object[]) value)[0]);
+	}
+
+	/**
+	 * Returns the encoded invocation held by an envelope.
+	 */
+	public static Object getPayload(Object value) {
+		return ((Object[]) value)[1];
+	}
+
+	/**
+	 * Puts the binary arguments held by an envelope back into the invocation
+	 * decoded from it.
+	 */
+	public static void attachArguments(RemoteInvocation invocation, Object value) {
+		Object[] binaries = (Object[]) ((Object[]) value)[2];
+		Object[] arguments = invocation.getArguments();
+		for (int i = 0; i < binaries.length && i < arguments.length; i++) {
+			if (binaries[i] != null) {
+				arguments[i] = binaries[i];
+			}
+		}
+	}
+
+	/**
+	 * Returns the envelope of the given result, or <code>null</code> if it's
+	 * an exception or anything else than a binary payload.
+	 */
+	public static Object[] wrapResult(Object result) {
+		if (!(result instanceof RemoteInvocationResult)) {
+			return null;
+		}
+		RemoteInvocationResult invocationResult = (RemoteInvocationResult) result;
+		if (invocationResult.hasException() || !isBinary(invocationResult.getValue())) {
+			return null;
+		}
+		return new Object[] { RESULT_MARKER, handOver(invocationResult.getValue()) };
+	}
+
+	public static boolean isResult(Object value) {
+		return value instanceof Object[] && ((Object[]) value).length == 2 && RESULT_MARKER.equals(((Object[]) value)[0]);
+	}
+
+	public static RemoteInvocationResult unwrapResult(Object value) {
+		return new RemoteInvocationResult(((Object[]) value)[1]);
+	}
+
+	private static boolean isBinary(Object value) {
+		return value instanceof byte[] || value instanceof ByteBuffer || value instanceof InputStream;
+	}
+
+	private static Object handOver(Object value) {
+		if (value instanceof ByteBuffer && !((ByteBuffer) value).isReadOnly()) {
+			return ((ByteBuffer) value).asReadOnlyBuffer();
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vilt.spring.remoting.crosscontext.metrics.Histogram;
+
+/**
+ * Limits the number of concurrent calls to a remote service, or to some of
+ * its methods, so that a slow service can't tie up every container thread.
+ * 
+ * <p>
+ * Calls beyond the limit wait for a permit up to a bounded time, and are
+ * rejected with a {@link BulkheadFullException} once it elapses.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see CrossContextProxyBeanFactory#setMaxConcurrentCalls(int)
+ * @see CrossContextProxyBeanFactory#setMethodConcurrencyLimits(java.util.Map)
+ */
+public class Bulkhead implements BulkheadMBean {
+
+	private static final double NANOS_PER_MICRO = 1000d;
+
+	private final String name;
+	private final int maxConcurrentCalls;
+	private final long maxWaitMillis;
+	private final Semaphore permits;
+	private final AtomicInteger peakConcurrentCalls = new AtomicInteger();
+	private final AtomicLong rejectedCalls = new AtomicLong();
+	private final Histogram waits = new Histogram();
+
+	public Bulkhead(String name, int maxConcurrentCalls, long maxWaitMillis) {
+		this.name = name;
+		this.maxConcurrentCalls = maxConcurrentCalls;
+		this.maxWaitMillis = maxWaitMillis;
+		this.permits = new Semaphore(maxConcurrentCalls);
+	}
+
+	/**
+	 * Takes a permit, waiting for one up to the maximum wait time.
+	 * 
+	 * @throws BulkheadFullException
+	 *             if no permit became available, or the thread was interrupted
+	 */
+	public void acquire() {
+		if (!permits.tryAcquire()) {
+			long start = System.nanoTime();
+			boolean acquired;
+			try {
+				acquired = maxWaitMillis > 0 && permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				rejectedCalls.incrementAndGet();
+				throw new BulkheadFullException("Interrupted while waiting for a permit of bulkhead " + name, e);
+			}
+			waits.record(System.nanoTime() - start);
+			if (!acquired) {
+				rejectedCalls.incrementAndGet();
+				throw new BulkheadFullException("Bulkhead " + name + " is full: " + maxConcurrentCalls + " concurrent calls already in progress");
+			}
+		}
+
+		int concurrentCalls = getConcurrentCalls();
+		int peak = peakConcurrentCalls.get();
+		while (concurrentCalls > peak && !peakConcurrentCalls.compareAndSet(peak, concurrentCalls)) {
+			peak = peakConcurrentCalls.get();
+		}
+	}
+
+	public void release() {
+		permits.release();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getMaxConcurrentCalls() {
+		return maxConcurrentCalls;
+	}
+
+	public int getConcurrentCalls() {
+		return maxConcurrentCalls - permits.availablePermits();
+	}
+
+	public int getPeakConcurrentCalls() {
+		return peakConcurrentCalls.get();
+	}
+
+	public long getRejectedCalls() {
+		return rejectedCalls.get();
+	}
+
+	public double getWaitMeanMicros() {
+		return waits.getMean() / NANOS_PER_MICRO;
+	}
+
+	public long getWaitMaxMicros() {
+		return (long) (waits.getMax() / NANOS_PER_MICRO);
+	}
+
+	public long[] getWaitHistogram() {
+		return waits.getBuckets();
+	}
+
+	public void reset() {
+		peakConcurrentCalls.set(getConcurrentCalls());
+		rejectedCalls.set(0);
+		waits.reset();
+	}
+
+}
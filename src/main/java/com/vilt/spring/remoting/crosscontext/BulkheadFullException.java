@@ -0,0 +1,24 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import org.springframework.remoting.RemoteAccessException;
+
+/**
+ * Thrown when a call is rejected because a {@link Bulkhead} of the proxy is
+ * saturated, without dispatching it to the remote context.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public class BulkheadFullException extends RemoteAccessException {
+
+	private static final long serialVersionUID = 1L;
+
+	public BulkheadFullException(String msg) {
+		super(msg);
+	}
+
+	public BulkheadFullException(String msg, Throwable cause) {
+		super(msg, cause);
+	}
+
+}
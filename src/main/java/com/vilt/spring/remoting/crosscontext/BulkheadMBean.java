@@ -0,0 +1,31 @@
+package com.vilt.spring.remoting.crosscontext;
+
+/**
+ * JMX management interface of {@link Bulkhead}. Wait times are in
+ * microseconds, and the histogram holds the counts of power of two buckets of
+ * nanoseconds (see {@link com.vilt.spring.remoting.crosscontext.metrics.Histogram}).
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public interface BulkheadMBean {
+
+	String getName();
+
+	int getMaxConcurrentCalls();
+
+	int getConcurrentCalls();
+
+	int getPeakConcurrentCalls();
+
+	long getRejectedCalls();
+
+	double getWaitMeanMicros();
+
+	long getWaitMaxMicros();
+
+	long[] getWaitHistogram();
+
+	void reset();
+
+}
@@ -0,0 +1,210 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops dispatching to a remote service that keeps failing, typically because
+ * its context is undeployed or restarting, so that callers fail fast instead
+ * of paying for a lookup and a dispatch each time.
+ * 
+ * <p>
+ * While {@link State#CLOSED}, the outcome of calls is counted over windows of
+ * <code>windowSize</code> calls, and the circuit opens when the failure rate
+ * of a window reaches the threshold. While {@link State#OPEN}, calls are
+ * rejected with a {@link CircuitOpenException}. After the open duration, up to
+ * <code>trialCalls</code> calls are let through ({@link State#HALF_OPEN}):
+ * the circuit closes if they all succeed, and opens again on the first
+ * failure. Calls admitted before the circuit opened don't count as trial
+ * calls, whenever they complete.
+ * 
+ * <p>
+ * Only failures to reach the service count, such as a missing context or
+ * dispatcher or a missing response, not exceptions thrown by the service
+ * itself.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see CrossContextProxyBeanFactory#setCircuitBreakerEnabled(boolean)
+ */
+public class CircuitBreaker {
+
+	public static enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String name;
+	private final int failureRateThreshold;
+	private final int windowSize;
+	private final long openDuration;
+	private final int trialCalls;
+
+	private volatile State state = State.CLOSED;
+	private volatile long openUntil;
+	private final AtomicInteger windowCalls = new AtomicInteger();
+	private final AtomicInteger windowFailures = new AtomicInteger();
+	private final AtomicInteger trialPermits = new AtomicInteger();
+	private final AtomicInteger trialSuccesses = new AtomicInteger();
+	private final AtomicLong rejectedCalls = new AtomicLong();
+
+	/**
+	 * @param name
+	 *            name used in exception messages
+	 * @param failureRateThreshold
+	 *            percentage of failed calls in a window that opens the circuit
+	 * @param windowSize
+	 *            number of calls over which the failure rate is measured
+	 * @param openDuration
+	 *            milliseconds the circuit stays open before trial calls
+	 * @param trialCalls
+	 *            number of successful trial calls needed to close the circuit
+	 */
+	public CircuitBreaker(String name, int failureRateThreshold, int windowSize, long openDuration, int trialCalls) {
+		this.name = name;
+		this.failureRateThreshold = failureRateThreshold;
+		this.windowSize = windowSize;
+		this.openDuration = openDuration;
+		this.trialCalls = trialCalls;
+	}
+
+	/**
+	 * Checks whether a call may proceed, and must be followed by either
+	 * {@link #recordSuccess(boolean)}, {@link #recordFailure(boolean)} or
+	 * {@link #cancel(boolean)}, given the returned value, so that the outcome
+	 * is recorded against the state the call was admitted in.
+	 * 
+	 * @return whether the call was admitted as a trial call
+	 * @throws CircuitOpenException
+	 *             if the circuit is open, or half open with all trial calls
+	 *             taken
+	 */
+	public boolean acquire() {
+		State current = state;
+		if (current == State.CLOSED) {
+			return false;
+		}
+		if (current == State.OPEN) {
+			if (System.currentTimeMillis() < openUntil) {
+				reject();
+			}
+			current = halfOpen();
+			if (current == State.CLOSED) {
+				return false;
+			} else if (current == State.OPEN) {
+				reject();
+			}
+		}
+		if (trialPermits.decrementAndGet() < 0) {
+			reject();
+		}
+		return true;
+	}
+
+	/**
+	 * @param trial
+	 *            the value returned by {@link #acquire()} for the call
+	 */
+	public void recordSuccess(boolean trial) {
+		if (trial) {
+			if (state == State.HALF_OPEN && trialSuccesses.incrementAndGet() >= trialCalls) {
+				close(State.HALF_OPEN);
+			}
+		} else if (state == State.CLOSED) {
+			record(false);
+		}
+	}
+
+	/**
+	 * @param trial
+	 *            the value returned by {@link #acquire()} for the call
+	 */
+	public void recordFailure(boolean trial) {
+		if (trial) {
+			open(State.HALF_OPEN);
+		} else if (state == State.CLOSED) {
+			record(true);
+		}
+	}
+
+	/**
+	 * Called instead of recording an outcome when a call acquired by
+	 * {@link #acquire()} didn't reach the remote context for reasons unrelated
+	 * to it, such as a saturated bulkhead.
+	 * 
+	 * @param trial
+	 *            the value returned by {@link #acquire()} for the call
+	 */
+	public void cancel(boolean trial) {
+		if (trial && state == State.HALF_OPEN) {
+			trialPermits.incrementAndGet();
+		}
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public long getRejectedCalls() {
+		return rejectedCalls.get();
+	}
+
+	/**
+	 * Closes the circuit and clears the current window.
+	 */
+	public synchronized void reset() {
+		close(state);
+	}
+
+	private void record(boolean failure) {
+		int calls = windowCalls.incrementAndGet();
+		if (failure) {
+			windowFailures.incrementAndGet();
+		}
+		if (calls >= windowSize) {
+			evaluateWindow();
+		}
+	}
+
+	private synchronized void evaluateWindow() {
+		int calls = windowCalls.get();
+		if (state != State.CLOSED || calls < windowSize) {
+			return;
+		}
+		int failures = windowFailures.get();
+		windowCalls.set(0);
+		windowFailures.set(0);
+		if (failures * 100 >= failureRateThreshold * calls) {
+			open(State.CLOSED);
+		}
+	}
+
+	private synchronized void open(State from) {
+		if (state == from) {
+			openUntil = System.currentTimeMillis() + openDuration;
+			state = State.OPEN;
+		}
+	}
+
+	private synchronized State halfOpen() {
+		if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+			trialPermits.set(trialCalls);
+			trialSuccesses.set(0);
+			state = State.HALF_OPEN;
+		}
+		return state;
+	}
+
+	private synchronized void close(State from) {
+		if (state == from) {
+			windowCalls.set(0);
+			windowFailures.set(0);
+			state = State.CLOSED;
+		}
+	}
+
+	private void reject() {
+		rejectedCalls.incrementAndGet();
+		throw new CircuitOpenException("Calls to " + name + " are suspended after repeated failures to reach it");
+	}
+
+}
@@ -0,0 +1,20 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import org.springframework.remoting.RemoteConnectFailureException;
+
+/**
+ * Thrown when a call is rejected because the {@link CircuitBreaker} of the
+ * proxy is open, without looking up or dispatching to the remote context.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public class CircuitOpenException extends RemoteConnectFailureException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CircuitOpenException(String msg) {
+		super(msg, null);
+	}
+
+}
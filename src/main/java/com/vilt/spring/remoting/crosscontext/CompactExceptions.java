@@ -0,0 +1,69 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import java.lang.reflect.Constructor;
+
+import org.springframework.remoting.RemoteAccessException;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Envelopes for exceptions transported as a record of their class name and
+ * message, which are rebuilt by the calling context instead of being
+ * serialized.
+ * 
+ * <p>
+ * Envelopes are object arrays tagged with a marker string, holding nothing
+ * but strings, so they're understood by both sides whatever class loaders
+ * each one uses.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see ExceptionTransport#COMPACT
+ */
+abstract class CompactExceptions {
+
+	static final String MARKER = CompactExceptions.class.getName() + ".EXCEPTION";
+
+	/**
+	 * Returns the envelope of the given exception, or <code>null</code> if its
+	 * class has neither a public constructor taking the message nor a public
+	 * no-arg constructor.
+	 */
+	public static Object[] wrap(Throwable exception) {
+		Class<?> exceptionClass = exception.getClass();
+		if (ClassUtils.getConstructorIfAvailable(exceptionClass, String.class) == null
+				&& ClassUtils.getConstructorIfAvailable(exceptionClass) == null) {
+			return null;
+		}
+		return new Object[] { MARKER, exceptionClass.getName(), exception.getMessage() };
+	}
+
+	public static boolean isException(Object value) {
+		return value instanceof Object[] && ((Object[]) value).length == 3 && MARKER.equals(((Object[]) value)[0]);
+	}
+
+	/**
+	 * Rebuilds the exception held by an envelope, resolving its class with the
+	 * given class loader, or returns a {@link RemoteAccessException} if it
+	 * can't be rebuilt.
+	 */
+	public static Throwable unwrap(Object value, ClassLoader classLoader) {
+		Object[] envelope = (Object[]) value;
+		String className = (String) envelope[1];
+		String message = (String) envelope[2];
+		try {
+			Class<?> exceptionClass = ClassUtils.forName(className, classLoader);
+			Constructor<?> constructor = ClassUtils.getConstructorIfAvailable(exceptionClass, String.class);
+			if (constructor != null) {
+				return (Throwable) constructor.newInstance(message);
+			}
+			constructor = ClassUtils.getConstructorIfAvailable(exceptionClass);
+			if (constructor != null) {
+				return (Throwable) constructor.newInstance();
+			}
+		} catch (Exception e) {
+			return new RemoteAccessException("Could not rebuild the remote exception " + className + ": " + message, e);
+		}
+		return new RemoteAccessException("Could not rebuild the remote exception " + className + ": " + message);
+	}
+
+}
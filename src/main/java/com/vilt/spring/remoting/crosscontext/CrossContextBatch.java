@@ -0,0 +1,141 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.ServletException;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+/**
+ * Collects several invocations of a remote service so that they are sent in a
+ * single dispatch.
+ * 
+ * <p>
+ * Methods called on the {@link #getService() recording service} are not
+ * executed immediately; they just return <code>null</code> (or the default
+ * value for primitive return types). On {@link #execute()}, all the recorded
+ * invocations are dispatched at once and executed in order by the
+ * {@link CrossContextServiceExporter}, and their results are returned in the
+ * same order:
+ * 
+ * <pre>
+ * CrossContextBatch batch = proxyFactory.createBatch();
+ * MyService service = batch.getService(MyService.class);
+ * service.getUser(1);
+ * service.getUser(2);
+ * List&lt;RemoteInvocationResult&gt; results = batch.execute();
+ * User first = (User) results.get(0).recreate();
+ * </pre>
+ * 
+ * Batches are not thread-safe, and are meant to be used by a single request.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see CrossContextProxyBeanFactory#createBatch()
+ */
+public class CrossContextBatch {
+
+	private final CrossContextProxyBeanFactory proxyFactory;
+	private final List<RemoteInvocation> invocations = new ArrayList<RemoteInvocation>();
+	private final Object service;
+
+	public CrossContextBatch(CrossContextProxyBeanFactory proxyFactory) {
+		this.proxyFactory = proxyFactory;
+		Class<?> serviceInterface = proxyFactory.getServiceInterface();
+		this.service = Proxy.newProxyInstance(serviceInterface.getClassLoader(), new Class<?>[] { serviceInterface }, new RecordingInvocationHandler());
+	}
+
+	/**
+	 * Returns an implementation of the service interface that records the
+	 * invocations made on it into this batch.
+	 */
+	public Object getService() {
+		return service;
+	}
+
+	/**
+	 * Typed version of {@link #getService()}.
+	 */
+	public <T> T getService(Class<T> serviceInterface) {
+		return serviceInterface.cast(service);
+	}
+
+	/**
+	 * Returns the number of invocations recorded and not yet executed.
+	 */
+	public int size() {
+		return invocations.size();
+	}
+
+	/**
+	 * Executes all the recorded invocations in a single dispatch, and returns
+	 * their results in the same order they were recorded. Use
+	 * {@link RemoteInvocationResult#recreate()} to get each value, or throw
+	 * the exception of each failed invocation. The batch is cleared
+	 * afterwards, so it can be reused.
+	 */
+	public List<RemoteInvocationResult> execute() throws ServletException, IOException {
+		if (invocations.isEmpty()) {
+			return Collections.emptyList();
+		}
+		try {
+			return proxyFactory.executeBatch(invocations);
+		} finally {
+			invocations.clear();
+		}
+	}
+
+	private class RecordingInvocationHandler implements InvocationHandler {
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (AopUtils.isEqualsMethod(method)) {
+				return proxy == args[0];
+			}
+			if (AopUtils.isHashCodeMethod(method)) {
+				return System.identityHashCode(proxy);
+			}
+			if (AopUtils.isToStringMethod(method)) {
+				return "Batch recording proxy for " + proxyFactory.getServiceUrl();
+			}
+			invocations.add(proxyFactory.createRemoteInvocation(method, args));
+			return getDefaultValue(method.getReturnType());
+		}
+
+		private Object getDefaultValue(Class<?> type) {
+			if (!type.isPrimitive() || type == void.class) {
+				return null;
+			}
+			if (type == boolean.class) {
+				return Boolean.FALSE;
+			}
+			if (type == char.class) {
+				return Character.valueOf('\0');
+			}
+			if (type == byte.class) {
+				return Byte.valueOf((byte) 0);
+			}
+			if (type == short.class) {
+				return Short.valueOf((short) 0);
+			}
+			if (type == int.class) {
+				return Integer.valueOf(0);
+			}
+			if (type == long.class) {
+				return Long.valueOf(0);
+			}
+			if (type == float.class) {
+				return Float.valueOf(0);
+			}
+			return Double.valueOf(0);
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a service interface method whose results may be cached by the
+ * {@link CrossContextProxyBeanFactory}, keyed by the method and its arguments.
+ * Meant for read-mostly lookups without side effects.
+ * 
+ * <p>
+ * Only successful results are cached. With serialization, results are kept
+ * encoded and decoded on each hit, so callers never share instances; with
+ * {@link TransferMode#COPY} or {@link TransferMode#AUTO} each hit gets a
+ * copy; with {@link TransferMode#REFERENCE} all callers get the same
+ * instance. Methods returning a {@link java.util.concurrent.Future} aren't
+ * cached.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see CrossContextServiceExporter#invalidateCache()
+ * @see CrossContextProxyBeanFactory#invalidateCache()
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface CrossContextCacheable {
+
+	/**
+	 * How long, in milliseconds, a result is kept. Zero or less means until
+	 * evicted or invalidated. Default is one minute.
+	 */
+	long timeToLive() default 60000;
+
+	/**
+	 * Maximum number of results kept for the method, the least recently used
+	 * being evicted first. Default is 1000.
+	 */
+	int maxSize() default 1000;
+
+}
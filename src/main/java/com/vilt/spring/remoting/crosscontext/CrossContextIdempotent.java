@@ -0,0 +1,29 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a service interface method that can be executed once on behalf of
+ * several identical concurrent calls, as it has no side effects that depend
+ * on the number of times it's called.
+ * 
+ * <p>
+ * When the {@link CrossContextProxyBeanFactory} has call coalescing enabled,
+ * a call to such a method with the same arguments as one already in flight
+ * waits for it instead of dispatching again, and gets its own copy of the
+ * result, unless the transfer mode is {@link TransferMode#REFERENCE}.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see CrossContextProxyBeanFactory#setCoalesceCalls(boolean)
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface CrossContextIdempotent {
+
+}
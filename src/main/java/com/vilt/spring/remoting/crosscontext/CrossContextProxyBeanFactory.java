@@ -2,29 +2,67 @@ package com.vilt.spring.remoting.crosscontext;
 
 import static java.lang.String.format;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
 import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
-import org.springframework.core.serializer.support.DeserializingConverter;
-import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.core.serializer.support.SerializationFailedException;
+import org.springframework.remoting.RemoteAccessException;
 import org.springframework.remoting.support.RemoteInvocation;
 import org.springframework.remoting.support.RemoteInvocationBasedAccessor;
 import org.springframework.remoting.support.RemoteInvocationResult;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.ReflectionUtils;
 import org.springframework.web.context.ServletContextAware;
 
+import com.vilt.spring.context.response.RequestAndResponse;
 import com.vilt.spring.context.response.RequestAndResponseHolder;
+import com.vilt.spring.remoting.crosscontext.cache.InvocationCache;
+import com.vilt.spring.remoting.crosscontext.cache.InvocationKey;
+import com.vilt.spring.remoting.crosscontext.codec.CodecUtils;
+import com.vilt.spring.remoting.crosscontext.codec.CrossContextCodec;
+import com.vilt.spring.remoting.crosscontext.codec.EncodingBuffer;
+import com.vilt.spring.remoting.crosscontext.codec.JdkSerializationCodec;
+import com.vilt.spring.remoting.crosscontext.codec.PayloadSizeHints;
+import com.vilt.spring.remoting.crosscontext.copy.DeepCopier;
+import com.vilt.spring.remoting.crosscontext.metrics.InvocationMetrics;
+import com.vilt.spring.remoting.crosscontext.metrics.MethodMetrics;
 
 /**
  * 
@@ -123,6 +161,26 @@ import com.vilt.spring.context.response.RequestAndResponseHolder;
  * }
  * </pre>
  * 
+ * <p>
+ * Service methods returning a {@link Future} are invoked asynchronously: the
+ * proxy returns immediately and the remote call runs on a bounded executor.
+ * Since the calling request can't be used from another thread, the call is
+ * dispatched with a synthetic request and response that only carry the
+ * caller's locale, so the remote context must not rely on anything but
+ * request attributes set during the call. The exporter waits for the future
+ * returned by the service and sends its outcome back. Calls made from threads
+ * the calling request was propagated to, for instance by a
+ * {@link com.vilt.spring.context.response.RequestAndResponseContextExecutorService},
+ * are dispatched the same way, so that concurrent calls never share it.
+ * 
+ * <p>
+ * When serialization is enabled, arguments and results of methods taking or
+ * returning <code>byte[]</code>, {@link java.nio.ByteBuffer} or
+ * {@link java.io.InputStream} are handed over next to the encoded invocation
+ * instead of being encoded with it, so their bytes are never copied. Byte
+ * buffers are handed over as read-only views, while byte arrays are shared
+ * with the other side and must not be modified once the call is made.
+ * 
  * @see org.springframework.web.servlet.DispatcherServlet#setCleanupAfterInclude(boolean)
  * @see CrossContextServiceExporter
  * @see com.vilt.spring.remoting.crosscontext.RequestAndResponseContextFilter
@@ -133,16 +191,82 @@ import com.vilt.spring.context.response.RequestAndResponseHolder;
  * @since 1.0
  */
 public class CrossContextProxyBeanFactory extends RemoteInvocationBasedAccessor implements ServletContextAware, MethodInterceptor, FactoryBean<Object>,
-		BeanClassLoaderAware {
+		BeanClassLoaderAware, DisposableBean {
 
 	public static final String INVOCATION_ATTR = CrossContextProxyBeanFactory.class.getName() + ".INVOCATION";
 	public static final String INVOCATION_RESULT_ATTR = CrossContextProxyBeanFactory.class.getName() + ".INVOCATION_RESULT";
+	public static final String INVOCATION_CODEC_ATTR = CrossContextProxyBeanFactory.class.getName() + ".INVOCATION_CODEC";
+
+	/**
+	 * Default interval, in milliseconds, after which a cached remote endpoint
+	 * is checked against the current remote servlet context.
+	 */
+	public static final long DEFAULT_ENDPOINT_REVALIDATION_INTERVAL = 5000;
+
+	/**
+	 * Type of the JMX MBeans exposing the metrics of proxies.
+	 * 
+	 * @see #setMetricsEnabled(boolean)
+	 */
+	public static final String METRICS_TYPE = "CrossContextProxy";
+
+	public static final int DEFAULT_ASYNC_POOL_SIZE = 4;
+
+	public static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 100;
+
+	private static final Object[] NO_ARGUMENTS = new Object[0];
+
+	private static final Object NULL_RESULT = new Object();
 
 	private ServletContext servletContext;
 
-	private final SerializingConverter serializingConverter = new SerializingConverter();
-	private final DeserializingConverter deserializingConverter = new DeserializingConverter();
-	private boolean serialize = true;
+	private boolean cacheEndpoint = true;
+	private long endpointRevalidationInterval = DEFAULT_ENDPOINT_REVALIDATION_INTERVAL;
+	private volatile ResolvedEndpoint resolvedEndpoint;
+	private final AtomicLong endpointCacheHits = new AtomicLong();
+	private final AtomicLong endpointCacheMisses = new AtomicLong();
+
+	private CrossContextCodec codec = new JdkSerializationCodec();
+	private TransferMode transferMode = TransferMode.SERIALIZE;
+	private volatile DeepCopier copier;
+	private boolean wrapRequest = false;
+	private boolean useMethodIndex = false;
+	private boolean lightweightProxy = false;
+	private ServiceMethodTable methodTable;
+	private PayloadSizeHints requestSizeHints;
+	private InvocationCache[] caches;
+	private boolean coalesceCalls = false;
+	private boolean[] coalescedMethods;
+	private boolean[] streamedMethods;
+	private boolean[] binaryMethods;
+	private final ConcurrentMap<InvocationKey, CoalescedCall> inFlightCalls = new ConcurrentHashMap<InvocationKey, CoalescedCall>();
+	private final AtomicLong coalescedCalls = new AtomicLong();
+	private String cacheGenerationAttribute;
+	private volatile Object observedCacheGeneration;
+	private volatile ServletContext lastRemoteContext;
+	private volatile long observedCacheGenerationValue;
+	private boolean allowHeadless = false;
+	private boolean directDispatch = false;
+	private String directServiceName;
+	private int maxConcurrentCalls = 0;
+	private Map<String, Integer> methodConcurrencyLimits;
+	private long bulkheadMaxWait = 0;
+	private Bulkhead bulkhead;
+	private Bulkhead[] methodBulkheads;
+	private boolean circuitBreakerEnabled = false;
+	private int circuitBreakerFailureRateThreshold = 50;
+	private int circuitBreakerWindowSize = 20;
+	private long circuitBreakerOpenDuration = 5000;
+	private int circuitBreakerTrialCalls = 3;
+	private CircuitBreaker circuitBreaker;
+	private boolean metricsEnabled = false;
+	private int asyncPoolSize = DEFAULT_ASYNC_POOL_SIZE;
+	private int asyncQueueCapacity = DEFAULT_ASYNC_QUEUE_CAPACITY;
+	private ExecutorService asyncExecutor;
+	private final ThreadLocal<Locale> asyncCallLocale = new ThreadLocal<Locale>();
+	private boolean ownsAsyncExecutor;
+	private MBeanServer mbeanServer;
+	private InvocationMetrics metrics;
 	private Object serviceProxy;
 
 	public void setServletContext(ServletContext servletContext) {
@@ -152,12 +276,80 @@ public class CrossContextProxyBeanFactory extends RemoteInvocationBasedAccessor
 	@Override
 	public void setBeanClassLoader(ClassLoader classLoader) {
 		super.setBeanClassLoader(classLoader);
+		this.copier = null;
 	}
 
 	@Override
 	public void afterPropertiesSet() {
 		super.afterPropertiesSet();
-		this.serviceProxy = new ProxyFactory(getServiceInterface(), this).getProxy(getBeanClassLoader());
+		this.methodTable = new ServiceMethodTable(getServiceInterface());
+		this.requestSizeHints = new PayloadSizeHints(methodTable.size());
+		this.caches = createCaches(methodTable);
+		this.streamedMethods = new boolean[methodTable.size()];
+		for (int i = 0; i < streamedMethods.length; i++) {
+			Method method = methodTable.getMethod(i);
+			if (method.isAnnotationPresent(CrossContextStreaming.class)) {
+				if (method.getReturnType() != Iterator.class) {
+					throw new IllegalArgumentException("Streamed method " + method + " must return java.util.Iterator");
+				}
+				streamedMethods[i] = true;
+			}
+		}
+		this.binaryMethods = new boolean[methodTable.size()];
+		for (int i = 0; i < binaryMethods.length; i++) {
+			binaryMethods[i] = BinaryPayloads.isBinaryMethod(methodTable.getMethod(i));
+		}
+		this.coalescedMethods = new boolean[methodTable.size()];
+		for (int i = 0; i < coalescedMethods.length; i++) {
+			Method method = methodTable.getMethod(i);
+			coalescedMethods[i] = coalesceCalls && method.isAnnotationPresent(CrossContextIdempotent.class) && method.getReturnType() != Future.class;
+		}
+		this.cacheGenerationAttribute = CrossContextServiceExporter.CACHE_GENERATION_ATTR_PREFIX + getServiceInterface().getName();
+		createBulkheads();
+		this.circuitBreaker = circuitBreakerEnabled ? new CircuitBreaker(getServiceUrl(), circuitBreakerFailureRateThreshold,
+				circuitBreakerWindowSize, circuitBreakerOpenDuration, circuitBreakerTrialCalls) : null;
+		if (metricsEnabled) {
+			this.metrics = new InvocationMetrics(METRICS_TYPE, servletContext != null ? servletContext.getContextPath() : null, getServiceUrl(), methodTable);
+			try {
+				metrics.registerMBeans(mbeanServer != null ? mbeanServer : ManagementFactory.getPlatformMBeanServer());
+				for (Bulkhead bulkhead : getBulkheads()) {
+					metrics.registerMBean(bulkhead, "bulkhead", bulkhead.getName());
+				}
+			} catch (JMException e) {
+				logger.warn("Could not register the invocation metrics MBeans of " + getServiceUrl(), e);
+			}
+		}
+		if (lightweightProxy) {
+			this.serviceProxy = Proxy.newProxyInstance(getBeanClassLoader(), new Class<?>[] { getServiceInterface() }, new ServiceStub());
+		} else {
+			this.serviceProxy = new ProxyFactory(getServiceInterface(), this).getProxy(getBeanClassLoader());
+		}
+	}
+
+	public void destroy() {
+		if (metrics != null) {
+			metrics.unregisterMBeans();
+		}
+		CodecUtils.clearCache(codec, getBeanClassLoader());
+		EncodingBuffer.clearPool();
+		synchronized (this) {
+			if (ownsAsyncExecutor && asyncExecutor != null) {
+				asyncExecutor.shutdown();
+				asyncExecutor = null;
+			}
+		}
+	}
+
+	private synchronized ExecutorService getAsyncExecutor() {
+		if (asyncExecutor == null) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("CrossContextProxy-" + getServiceInterface().getSimpleName() + "-");
+			threadFactory.setDaemon(true);
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(asyncPoolSize, asyncPoolSize, 60, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(asyncQueueCapacity), threadFactory);
+			asyncExecutor = executor;
+			ownsAsyncExecutor = true;
+		}
+		return asyncExecutor;
 	}
 
 	public Object getObject() throws Exception {
@@ -173,65 +365,1105 @@ public class CrossContextProxyBeanFactory extends RemoteInvocationBasedAccessor
 	}
 
 	public void setSerialize(boolean serialize) {
-		this.serialize = serialize;
+		this.transferMode = serialize ? TransferMode.SERIALIZE : TransferMode.REFERENCE;
 	}
 
 	public boolean isSerialize() {
-		return serialize;
+		return transferMode == TransferMode.SERIALIZE;
+	}
+
+	/**
+	 * Set how invocations and their results are handed over to the remote
+	 * context. Must match the transfer mode of the exporter on the other side.
+	 * Default is {@link TransferMode#SERIALIZE}.
+	 * 
+	 * @see #setSerialize(boolean)
+	 */
+	public void setTransferMode(TransferMode transferMode) {
+		this.transferMode = transferMode;
+	}
+
+	public TransferMode getTransferMode() {
+		return transferMode;
+	}
+
+	/**
+	 * Set the codec used to encode invocations and decode their results when
+	 * <code>serialize</code> is enabled. The exporter on the other side must
+	 * be configured with a codec of the same name. Default is
+	 * {@link JdkSerializationCodec}.
+	 */
+	public void setCodec(CrossContextCodec codec) {
+		this.codec = codec;
+	}
+
+	public CrossContextCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Set whether invocations are dispatched with a request wrapper that hides
+	 * the attributes of the calling request and carries the invocation and its
+	 * result in private slots, instead of backing up, removing and restoring
+	 * those attributes around each call. Default is <code>false</code>, since
+	 * some containers don't pass wrapped requests through to the included
+	 * resource.
+	 * 
+	 * @see #backupAndRemoveAttributes(HttpServletRequest)
+	 */
+	public void setWrapRequest(boolean wrapRequest) {
+		this.wrapRequest = wrapRequest;
+	}
+
+	public boolean isWrapRequest() {
+		return wrapRequest;
+	}
+
+	/**
+	 * Set the number of threads running invocations of service methods that
+	 * return a {@link Future}. Default is {@link #DEFAULT_ASYNC_POOL_SIZE}.
+	 * Ignored when an executor is set with
+	 * {@link #setAsyncExecutor(ExecutorService)}.
+	 */
+	public void setAsyncPoolSize(int asyncPoolSize) {
+		this.asyncPoolSize = asyncPoolSize;
+	}
+
+	public int getAsyncPoolSize() {
+		return asyncPoolSize;
+	}
+
+	/**
+	 * Set how many asynchronous invocations may wait for a thread. Once the
+	 * queue is full further invocations are rejected with a
+	 * {@link java.util.concurrent.RejectedExecutionException}. Default is
+	 * {@link #DEFAULT_ASYNC_QUEUE_CAPACITY}.
+	 */
+	public void setAsyncQueueCapacity(int asyncQueueCapacity) {
+		this.asyncQueueCapacity = asyncQueueCapacity;
+	}
+
+	public int getAsyncQueueCapacity() {
+		return asyncQueueCapacity;
+	}
+
+	/**
+	 * Set the executor running invocations of service methods that return a
+	 * {@link Future}, instead of the bounded pool created by this proxy. It
+	 * isn't shut down when this proxy is destroyed.
+	 */
+	public synchronized void setAsyncExecutor(ExecutorService asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+		this.ownsAsyncExecutor = false;
+	}
+
+	/**
+	 * Set the maximum number of concurrent calls to the service through this
+	 * proxy. Calls beyond it wait up to {@link #setBulkheadMaxWait(long)} and
+	 * are then rejected with a {@link BulkheadFullException}. Default is
+	 * <code>0</code>, meaning no limit.
+	 */
+	public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+		this.maxConcurrentCalls = maxConcurrentCalls;
+	}
+
+	public int getMaxConcurrentCalls() {
+		return maxConcurrentCalls;
+	}
+
+	/**
+	 * Set the maximum number of concurrent calls of specific methods, by
+	 * method name, on top of {@link #setMaxConcurrentCalls(int)}. Overloaded
+	 * methods share their limit.
+	 */
+	public void setMethodConcurrencyLimits(Map<String, Integer> methodConcurrencyLimits) {
+		this.methodConcurrencyLimits = methodConcurrencyLimits;
+	}
+
+	public Map<String, Integer> getMethodConcurrencyLimits() {
+		return methodConcurrencyLimits;
+	}
+
+	/**
+	 * Set how long, in milliseconds, a call waits for a saturated bulkhead
+	 * before being rejected. Default is <code>0</code>, rejecting it right
+	 * away.
+	 */
+	public void setBulkheadMaxWait(long bulkheadMaxWait) {
+		this.bulkheadMaxWait = bulkheadMaxWait;
+	}
+
+	public long getBulkheadMaxWait() {
+		return bulkheadMaxWait;
+	}
+
+	/**
+	 * Set whether calls are suspended, failing fast with a
+	 * {@link CircuitOpenException}, while the remote service can't be reached,
+	 * as happens during redeploys. Default is <code>false</code>.
+	 * 
+	 * @see CircuitBreaker
+	 */
+	public void setCircuitBreakerEnabled(boolean circuitBreakerEnabled) {
+		this.circuitBreakerEnabled = circuitBreakerEnabled;
+	}
+
+	public boolean isCircuitBreakerEnabled() {
+		return circuitBreakerEnabled;
+	}
+
+	/**
+	 * Set the percentage of failed calls, within a window, that opens the
+	 * circuit. Default is 50.
+	 */
+	public void setCircuitBreakerFailureRateThreshold(int circuitBreakerFailureRateThreshold) {
+		this.circuitBreakerFailureRateThreshold = circuitBreakerFailureRateThreshold;
+	}
+
+	/**
+	 * Set the number of calls over which the failure rate is measured. Default
+	 * is 20.
+	 */
+	public void setCircuitBreakerWindowSize(int circuitBreakerWindowSize) {
+		this.circuitBreakerWindowSize = circuitBreakerWindowSize;
+	}
+
+	/**
+	 * Set how long, in milliseconds, the circuit stays open before trial calls
+	 * are let through. Default is 5000.
+	 */
+	public void setCircuitBreakerOpenDuration(long circuitBreakerOpenDuration) {
+		this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+	}
+
+	/**
+	 * Set the number of successful trial calls needed to close the circuit
+	 * again. Default is 3.
+	 */
+	public void setCircuitBreakerTrialCalls(int circuitBreakerTrialCalls) {
+		this.circuitBreakerTrialCalls = circuitBreakerTrialCalls;
+	}
+
+	/**
+	 * Returns the circuit breaker, or <code>null</code> if it's not enabled.
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * Set whether concurrent calls with the same arguments to methods
+	 * annotated with {@link CrossContextIdempotent} are coalesced into a
+	 * single dispatch. Default is <code>false</code>. Must be set before
+	 * {@link #afterPropertiesSet()}.
+	 */
+	public void setCoalesceCalls(boolean coalesceCalls) {
+		this.coalesceCalls = coalesceCalls;
+	}
+
+	public boolean isCoalesceCalls() {
+		return coalesceCalls;
+	}
+
+	/**
+	 * Set whether calls are handed over directly to the
+	 * {@link CrossContextServiceExporter} registered in the remote servlet
+	 * context, skipping the request dispatch, the remote filter chain and the
+	 * DispatcherServlet. The transfer mode and codec still apply, and the
+	 * thread context class loader is switched to the remote one during the
+	 * call. When no exporter is registered, calls fall back to includes.
+	 * Default is <code>false</code>.
+	 * 
+	 * <p>
+	 * Note that the remote service then runs without a request of its own:
+	 * anything bound by the remote filters, such as the
+	 * {@link RequestAndResponseHolder} of the remote context, isn't available.
+	 * 
+	 * @see #setDirectServiceName(String)
+	 */
+	public void setDirectDispatch(boolean directDispatch) {
+		this.directDispatch = directDispatch;
+	}
+
+	public boolean isDirectDispatch() {
+		return directDispatch;
+	}
+
+	/**
+	 * Set the name under which the exporter is registered for direct dispatch.
+	 * Default is the path of the service relative to the remote context.
+	 * 
+	 * @see CrossContextServiceExporter#setDirectServiceName(String)
+	 */
+	public void setDirectServiceName(String directServiceName) {
+		this.directServiceName = directServiceName;
+	}
+
+	public String getDirectServiceName() {
+		return directServiceName;
+	}
+
+	private String getDirectExporterAttribute(String servicePath) {
+		return CrossContextServiceExporter.DIRECT_EXPORTER_ATTR_PREFIX + (directServiceName != null ? directServiceName : servicePath);
+	}
+
+	/**
+	 * Set whether calls made from threads that aren't serving an HTTP request,
+	 * such as scheduled jobs or message listeners, are allowed. Those calls are
+	 * dispatched with a synthetic request and response, built for each call,
+	 * that only hold attributes. Default is <code>false</code>, in
+	 * which case such calls fail with an {@link IllegalStateException}.
+	 * 
+	 * <p>
+	 * The remote context must not rely on anything but request attributes,
+	 * such as parameters, headers or the session.
+	 */
+	public void setAllowHeadless(boolean allowHeadless) {
+		this.allowHeadless = allowHeadless;
+	}
+
+	public boolean isAllowHeadless() {
+		return allowHeadless;
+	}
+
+	/**
+	 * Set whether per method invocation metrics are recorded and exposed as
+	 * JMX MBeans. Default is <code>false</code>. Must be set before
+	 * {@link #afterPropertiesSet()}.
+	 * 
+	 * @see InvocationMetrics
+	 */
+	public void setMetricsEnabled(boolean metricsEnabled) {
+		this.metricsEnabled = metricsEnabled;
+	}
+
+	public boolean isMetricsEnabled() {
+		return metricsEnabled;
+	}
+
+	/**
+	 * Set the MBean server where metrics MBeans are registered. Default is the
+	 * platform MBean server.
+	 */
+	public void setMBeanServer(MBeanServer mbeanServer) {
+		this.mbeanServer = mbeanServer;
+	}
+
+	/**
+	 * Returns the invocation metrics, or <code>null</code> if they're not
+	 * enabled.
+	 */
+	public InvocationMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Set whether the service proxy is a plain JDK proxy class, generated once
+	 * for the service interface, whose invocations go straight to
+	 * {@link #invoke(Method, Object[])}, instead of a Spring AOP proxy going
+	 * through an interceptor chain and a {@link MethodInvocation} per call.
+	 * Default is <code>false</code>. Must be set before
+	 * {@link #afterPropertiesSet()}.
+	 */
+	public void setLightweightProxy(boolean lightweightProxy) {
+		this.lightweightProxy = lightweightProxy;
+	}
+
+	public boolean isLightweightProxy() {
+		return lightweightProxy;
+	}
+
+	/**
+	 * Set whether invocations identify the invoked method by its index in the
+	 * {@link ServiceMethodTable} of the service interface, along with a
+	 * fingerprint of that interface, instead of its name and parameter types.
+	 * This makes invocations smaller and lets the exporter dispatch them
+	 * without any method lookup. The exporter on the other side must support
+	 * {@link IndexedRemoteInvocation}s. Default is <code>false</code>.
+	 */
+	public void setUseMethodIndex(boolean useMethodIndex) {
+		this.useMethodIndex = useMethodIndex;
+	}
+
+	public boolean isUseMethodIndex() {
+		return useMethodIndex;
+	}
+
+	/**
+	 * Set whether the remote servlet context, the context relative service
+	 * path and the corresponding request dispatcher should be resolved once and
+	 * reused by subsequent invocations. Default is <code>true</code>.
+	 */
+	public void setCacheEndpoint(boolean cacheEndpoint) {
+		this.cacheEndpoint = cacheEndpoint;
+		this.resolvedEndpoint = null;
+	}
+
+	public boolean isCacheEndpoint() {
+		return cacheEndpoint;
+	}
+
+	/**
+	 * Set the interval, in milliseconds, after which a cached endpoint is
+	 * checked against the servlet context currently deployed on the remote
+	 * context path, so that redeployed contexts are noticed. A negative value
+	 * disables this check, leaving only dispatch failures to invalidate the
+	 * cached endpoint. Default is
+	 * {@link #DEFAULT_ENDPOINT_REVALIDATION_INTERVAL}.
+	 */
+	public void setEndpointRevalidationInterval(long endpointRevalidationInterval) {
+		this.endpointRevalidationInterval = endpointRevalidationInterval;
+	}
+
+	public long getEndpointRevalidationInterval() {
+		return endpointRevalidationInterval;
+	}
+
+	/**
+	 * Returns the number of invocations that reused the cached endpoint.
+	 */
+	public long getEndpointCacheHits() {
+		return endpointCacheHits.get();
+	}
+
+	/**
+	 * Returns the number of invocations that had to resolve the endpoint.
+	 */
+	public long getEndpointCacheMisses() {
+		return endpointCacheMisses.get();
+	}
+
+	/**
+	 * Discards the cached endpoint, forcing the next invocation to resolve the
+	 * remote servlet context and request dispatcher again.
+	 */
+	public void invalidateEndpoint() {
+		this.resolvedEndpoint = null;
 	}
 
 	public Object invoke(MethodInvocation invocation) throws Throwable {
+		return invoke(invocation.getMethod(), invocation.getArguments());
+	}
+
+	/**
+	 * Invokes the given method of the remote service with the given arguments.
+	 */
+	protected Object invoke(Method method, Object[] arguments) throws Throwable {
+		if (method.getReturnType() == Future.class) {
+			return invokeAsync(method, arguments);
+		}
+		return invoke(method, arguments, wrapRequest);
+	}
+
+	/**
+	 * Submits the invocation to the asynchronous executor. The request and
+	 * response of the calling thread must not be used from another thread,
+	 * and may even be recycled before the invocation runs, so it's dispatched
+	 * through a synthetic exchange that only carries the caller's locale,
+	 * which is all the task takes along.
+	 */
+	private Future<Object> invokeAsync(final Method method, final Object[] arguments) {
+		final Locale locale = isHeadless() ? Locale.getDefault() : getCallerLocale();
+		return getAsyncExecutor().submit(new Callable<Object>() {
+			public Object call() throws Exception {
+				asyncCallLocale.set(locale);
+				try {
+					return invoke(method, arguments, false);
+				} catch (Exception e) {
+					throw e;
+				} catch (Error e) {
+					throw e;
+				} catch (Throwable e) {
+					throw new UndeclaredThrowableException(e);
+				} finally {
+					asyncCallLocale.remove();
+				}
+			}
+		});
+	}
+
+	private Object invoke(Method method, Object[] arguments, boolean wrap) throws Throwable {
+		int methodIndex = methodTable.indexOf(method);
+		if (methodIndex >= 0 && streamedMethods[methodIndex]) {
+			return openCursor((CursorChunk) invokeRemote(method, methodIndex, arguments, wrap), wrap);
+		}
+		InvocationCache cache = methodIndex >= 0 ? caches[methodIndex] : null;
+		boolean coalesce = methodIndex >= 0 && coalescedMethods[methodIndex];
+		if (cache == null && !coalesce) {
+			return invokeRemote(method, methodIndex, arguments, wrap);
+		}
+
+		InvocationKey key = createCacheKey(methodIndex, arguments != null ? arguments : NO_ARGUMENTS);
+		if (cache != null) {
+			checkCacheGeneration();
+			Object cached = cache.get(key);
+			if (cached != null) {
+				return fromCache(cached);
+			}
+		}
+		if (coalesce) {
+			return invokeCoalesced(key, cache, method, methodIndex, arguments, wrap);
+		}
+		Object value = invokeRemote(method, methodIndex, arguments, wrap);
+		if (cache != null) {
+			cache.put(key, toCache(value));
+		}
+		return value;
+	}
+
+	/**
+	 * Dispatches the call unless an identical one is already in flight, in
+	 * which case its outcome is shared. The result is only turned into its
+	 * cacheable form, so that each caller gets its own copy, when other
+	 * callers joined or it's cached; that form is what gets cached.
+	 */
+	private Object invokeCoalesced(InvocationKey key, InvocationCache cache, Method method, int methodIndex, Object[] arguments, boolean wrap)
+			throws Throwable {
+		CoalescedCall call = new CoalescedCall();
+		CoalescedCall inFlight;
+		while ((inFlight = inFlightCalls.putIfAbsent(key, call)) != null) {
+			if (inFlight.join()) {
+				coalescedCalls.incrementAndGet();
+				return fromCache(inFlight.await());
+			}
+			// the call completed in the meantime, so it's dispatched again
+			inFlightCalls.remove(key, inFlight);
+		}
+
+		Object value;
+		try {
+			value = invokeRemote(method, methodIndex, arguments, wrap);
+		} catch (Throwable e) {
+			inFlightCalls.remove(key, call);
+			call.close();
+			call.complete(null, e);
+			throw e;
+		}
+		inFlightCalls.remove(key, call);
+		boolean shared = call.close();
+		if (!shared && cache == null) {
+			return value;
+		}
+		Object cached;
+		try {
+			cached = toCache(value);
+		} catch (Throwable e) {
+			call.complete(null, e);
+			throw e;
+		}
+		call.complete(cached, null);
+		if (cache != null) {
+			cache.put(key, cached);
+		}
+		return value;
+	}
+
+	/**
+	 * Returns an iterator over the remote cursor whose first chunk is given,
+	 * which is closed when the current request completes if it isn't
+	 * exhausted by then.
+	 */
+	private Iterator<Object> openCursor(CursorChunk chunk, boolean wrap) {
+		if (chunk == null) {
+			return null;
+		}
+		final CursorIterator iterator = new CursorIterator(this, chunk, wrap);
+		RequestAndResponse requestAndResponse = RequestAndResponseHolder.getRequestAndResponse();
+		if (!chunk.isLast() && requestAndResponse != null) {
+			requestAndResponse.registerCompletionCallback(new Runnable() {
+				public void run() {
+					iterator.close();
+				}
+			});
+		}
+		return iterator;
+	}
+
+	/**
+	 * Fetches the next chunk of a remote cursor, or closes it.
+	 */
+	CursorChunk fetchChunk(String cursorId, boolean close, boolean wrap) {
+		RemoteInvocationResult result;
+		try {
+			result = (RemoteInvocationResult) executeRequest(new CursorInvocation(cursorId, close), -1, null, wrap);
+		} catch (ServletException e) {
+			throw new RemoteAccessException("Could not fetch from cursor " + cursorId + " of " + getServiceUrl(), e);
+		} catch (IOException e) {
+			throw new RemoteAccessException("Could not fetch from cursor " + cursorId + " of " + getServiceUrl(), e);
+		}
+		Throwable exception = result.getException();
+		if (exception instanceof RuntimeException) {
+			throw (RuntimeException) exception;
+		} else if (exception instanceof Error) {
+			throw (Error) exception;
+		} else if (exception != null) {
+			throw new RemoteAccessException("Could not fetch from cursor " + cursorId + " of " + getServiceUrl(), exception);
+		}
+		return (CursorChunk) result.getValue();
+	}
+
+	private Object invokeRemote(Method method, int methodIndex, Object[] arguments, boolean wrap) throws Throwable {
+		MethodMetrics methodMetrics = metrics != null ? metrics.getMethodMetrics(methodIndex) : null;
+		if (methodMetrics != null) {
+			methodMetrics.recordCall();
+		}
+
+		RemoteInvocationResult callReturn;
+		try {
+			RemoteInvocation call = createRemoteInvocation(method, arguments != null ? arguments : NO_ARGUMENTS);
+			callReturn = (RemoteInvocationResult) executeRequest(call, methodIndex, methodMetrics, wrap);
+		} catch (Throwable e) {
+			if (methodMetrics != null) {
+				methodMetrics.recordError();
+			}
+			throw e;
+		}
+
+		if (callReturn.getException() != null) {
+			if (methodMetrics != null) {
+				methodMetrics.recordError();
+			}
+			throw callReturn.getException();
+		}
+
+		return callReturn.getValue();
+	}
+
+	/**
+	 * Creates a batch to collect several invocations of the remote service and
+	 * send them in a single dispatch.
+	 * 
+	 * @see CrossContextBatch
+	 */
+	public CrossContextBatch createBatch() {
+		return new CrossContextBatch(this);
+	}
+
+	/**
+	 * Executes the given invocations, in order, in a single dispatch and
+	 * returns their results in the same order.
+	 * 
+	 * @see #createBatch()
+	 */
+	@SuppressWarnings("unchecked")
+	public List<RemoteInvocationResult> executeBatch(List<RemoteInvocation> invocations) throws ServletException, IOException {
+		MethodMetrics batchMetrics = metrics != null ? metrics.getBatchMetrics() : null;
+		if (batchMetrics != null) {
+			batchMetrics.recordCall();
+		}
+		try {
+			return (List<RemoteInvocationResult>) executeRequest(new ArrayList<RemoteInvocation>(invocations), -1, batchMetrics, wrapRequest);
+		} catch (RuntimeException e) {
+			if (batchMetrics != null) {
+				batchMetrics.recordError();
+			}
+			throw e;
+		} catch (ServletException e) {
+			if (batchMetrics != null) {
+				batchMetrics.recordError();
+			}
+			throw e;
+		} catch (IOException e) {
+			if (batchMetrics != null) {
+				batchMetrics.recordError();
+			}
+			throw e;
+		}
+	}
+
+	private void createBulkheads() {
+		this.bulkhead = maxConcurrentCalls > 0 ? new Bulkhead(getServiceUrl(), maxConcurrentCalls, bulkheadMaxWait) : null;
+		this.methodBulkheads = new Bulkhead[methodTable.size()];
+		if (methodConcurrencyLimits != null) {
+			// overloaded methods share the bulkhead of their name
+			Map<String, Bulkhead> bulkheadsByName = new HashMap<String, Bulkhead>();
+			for (Map.Entry<String, Integer> limit : methodConcurrencyLimits.entrySet()) {
+				bulkheadsByName.put(limit.getKey(), new Bulkhead(getServiceUrl() + "#" + limit.getKey(), limit.getValue(), bulkheadMaxWait));
+			}
+			for (int i = 0; i < methodBulkheads.length; i++) {
+				methodBulkheads[i] = bulkheadsByName.get(methodTable.getMethod(i).getName());
+			}
+		}
+	}
+
+	/**
+	 * Returns the bulkheads of this proxy, the service one first, if any.
+	 */
+	public List<Bulkhead> getBulkheads() {
+		List<Bulkhead> bulkheads = new ArrayList<Bulkhead>();
+		if (bulkhead != null) {
+			bulkheads.add(bulkhead);
+		}
+		for (Bulkhead methodBulkhead : methodBulkheads) {
+			if (methodBulkhead != null && !bulkheads.contains(methodBulkhead)) {
+				bulkheads.add(methodBulkhead);
+			}
+		}
+		return bulkheads;
+	}
+
+	private static InvocationCache[] createCaches(ServiceMethodTable methodTable) {
+		InvocationCache[] caches = new InvocationCache[methodTable.size()];
+		for (int i = 0; i < caches.length; i++) {
+			Method method = methodTable.getMethod(i);
+			CrossContextCacheable cacheable = method.getAnnotation(CrossContextCacheable.class);
+			if (cacheable != null && method.getReturnType() != Future.class) {
+				caches[i] = new InvocationCache(cacheable.maxSize(), cacheable.timeToLive());
+			}
+		}
+		return caches;
+	}
+
+	private InvocationKey createCacheKey(int methodIndex, Object[] arguments) {
+		if (transferMode == TransferMode.SERIALIZE) {
+			return new InvocationKey(methodIndex, CodecUtils.encode(codec, arguments));
+		}
+		// the caller may change the arguments after the call
+		return new InvocationKey(methodIndex, (Object[]) getCopier().copy(arguments));
+	}
+
+	/**
+	 * Returns the form in which a result is cached or shared with coalesced
+	 * calls, which is never the instance returned to the caller, since the
+	 * caller may change it.
+	 */
+	private Object toCache(Object value) {
+		if (transferMode == TransferMode.SERIALIZE) {
+			return CodecUtils.encode(codec, value);
+		}
+		if (value == null) {
+			return NULL_RESULT;
+		}
+		return transferMode != TransferMode.REFERENCE ? getCopier().copy(value) : value;
+	}
+
+	private Object fromCache(Object cached) {
+		if (transferMode == TransferMode.SERIALIZE) {
+			return CodecUtils.decode(codec, (byte[]) cached, getBeanClassLoader());
+		}
+		if (cached == NULL_RESULT) {
+			return null;
+		}
+		return transferMode != TransferMode.REFERENCE ? getCopier().copy(cached) : cached;
+	}
+
+	/**
+	 * Clears the cached results when the exporter published a new cache
+	 * generation in the remote context, or was redeployed. The generation is
+	 * read from the context the last call was dispatched to, leaving endpoint
+	 * resolution, and its failures, to the calls actually dispatched.
+	 */
+	private void checkCacheGeneration() {
+		ServletContext remoteContext = lastRemoteContext;
+		if (remoteContext == null) {
+			// nothing was dispatched, so nothing was cached either
+			return;
+		}
+		Object generation = remoteContext.getAttribute(cacheGenerationAttribute);
+		long generationValue = generation instanceof AtomicLong ? ((AtomicLong) generation).get() : 0;
+		if (generation != observedCacheGeneration || generationValue != observedCacheGenerationValue) {
+			invalidateCache();
+			observedCacheGeneration = generation;
+			observedCacheGenerationValue = generationValue;
+		}
+	}
+
+	/**
+	 * Clears the results cached by this proxy.
+	 * 
+	 * @see CrossContextCacheable
+	 */
+	public void invalidateCache() {
+		for (InvocationCache cache : caches) {
+			if (cache != null) {
+				cache.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of calls that waited for an identical call in flight
+	 * instead of being dispatched.
+	 * 
+	 * @see #setCoalesceCalls(boolean)
+	 */
+	public long getCoalescedCalls() {
+		return coalescedCalls.get();
+	}
+
+	/**
+	 * Returns the number of calls answered from the cache.
+	 */
+	public long getCacheHits() {
+		long hits = 0;
+		for (InvocationCache cache : caches) {
+			if (cache != null) {
+				hits += cache.getHits();
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Returns the number of calls to cacheable methods that weren't found in
+	 * the cache.
+	 */
+	public long getCacheMisses() {
+		long misses = 0;
+		for (InvocationCache cache : caches) {
+			if (cache != null) {
+				misses += cache.getMisses();
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * Returns the cache of the given method, or <code>null</code> if it's not
+	 * annotated with {@link CrossContextCacheable}.
+	 */
+	public InvocationCache getCache(Method method) {
+		int methodIndex = methodTable.indexOf(method);
+		return methodIndex >= 0 ? caches[methodIndex] : null;
+	}
+
+	/**
+	 * Creates the invocation sent to the remote context for the given method
+	 * and arguments.
+	 */
+	protected RemoteInvocation createRemoteInvocation(Method method, Object[] arguments) {
+		if (useMethodIndex) {
+			int methodIndex = methodTable.indexOf(method);
+			if (methodIndex >= 0) {
+				return new IndexedRemoteInvocation(methodTable.getFingerprint(), methodIndex, arguments);
+			}
+		}
+		return new RemoteInvocation(method.getName(), method.getParameterTypes(), arguments);
+	}
+
+	/**
+	 * Dispatches the given invocation, or list of invocations, to the remote
+	 * context, and returns the result set there by the
+	 * {@link CrossContextServiceExporter}.
+	 */
+	protected Object executeRequest(Object call) throws ServletException, IOException {
+		return executeRequest(call, -1, null, wrapRequest);
+	}
+
+	private Object executeRequest(Object call, int methodIndex, MethodMetrics metrics, boolean wrap) throws ServletException, IOException {
 
 		if (servletContext == null) {
 			throw new NullPointerException("No servlet context was set. Ensure that Spring is able to inject a servlet context " + "in this bean");
 		}
 
-		HttpServletRequest servletRequest = getServletRequest();
-		ServletContext remoteContext = servletContext.getContext(getRemoteContextPath());
-		if (remoteContext == null) {
-			throw new IllegalStateException(format("Servlet context for %s could not be found. Ensure the corresponding context supports cross context calls!",
-					remoteContext));
+		if (circuitBreaker == null) {
+			return executeWithinBulkheads(call, methodIndex, metrics, wrap);
 		}
 
-		String contextRelativeServicePath = getServiceUrl().substring(remoteContext.getContextPath().length());
+		boolean trial = circuitBreaker.acquire();
+		Object result;
+		try {
+			result = executeWithinBulkheads(call, methodIndex, metrics, wrap);
+		} catch (BulkheadFullException e) {
+			circuitBreaker.cancel(trial);
+			throw e;
+		} catch (SerializationFailedException e) {
+			// the remote context may not even have been reached
+			circuitBreaker.cancel(trial);
+			throw e;
+		} catch (RuntimeException e) {
+			circuitBreaker.recordFailure(trial);
+			throw e;
+		} catch (ServletException e) {
+			circuitBreaker.recordFailure(trial);
+			throw e;
+		} catch (IOException e) {
+			circuitBreaker.recordFailure(trial);
+			throw e;
+		}
+		circuitBreaker.recordSuccess(trial);
+		return result;
+	}
+
+	private Object executeWithinBulkheads(Object call, int methodIndex, MethodMetrics metrics, boolean wrap) throws ServletException, IOException {
+		Bulkhead methodBulkhead = methodIndex >= 0 ? methodBulkheads[methodIndex] : null;
+		if (bulkhead != null) {
+			bulkhead.acquire();
+		}
+		try {
+			if (methodBulkhead != null) {
+				methodBulkhead.acquire();
+			}
+			try {
+				return executeRequestInContext(call, methodIndex, metrics, wrap);
+			} finally {
+				if (methodBulkhead != null) {
+					methodBulkhead.release();
+				}
+			}
+		} finally {
+			if (bulkhead != null) {
+				bulkhead.release();
+			}
+		}
+	}
 
-		Method method = invocation.getMethod();
-		Object[] arguments = invocation.getArguments();
+	private Object executeRequestInContext(Object call, int methodIndex, MethodMetrics metrics, boolean wrap) throws ServletException, IOException {
+		Locale exchangeLocale = asyncCallLocale.get();
+		if (exchangeLocale == null) {
+			RequestAndResponse requestAndResponse = RequestAndResponseHolder.getRequestAndResponse();
+			if (requestAndResponse != null && requestAndResponse.isPropagated()) {
+				// the request is still served by its own thread
+				exchangeLocale = requestAndResponse.getLocale();
+			} else if (isHeadless()) {
+				exchangeLocale = Locale.getDefault();
+			}
+		}
+		if (exchangeLocale != null) {
+			HeadlessExchange exchange = new HeadlessExchange(servletContext, exchangeLocale);
+			RequestAndResponse previous = RequestAndResponseHolder.bind(new RequestAndResponse(exchange.getRequest(), exchange.getResponse()));
+			try {
+				return executeRequestInExchange(call, methodIndex, metrics, wrap);
+			} finally {
+				RequestAndResponseHolder.restore(previous);
+			}
+		}
+		return executeRequestInExchange(call, methodIndex, metrics, wrap);
+	}
+
+	private Object executeRequestInExchange(Object call, int methodIndex, MethodMetrics metrics, boolean wrap) throws ServletException, IOException {
+		ResolvedEndpoint endpoint = resolveEndpoint();
+		HttpServletRequest servletRequest = endpoint.directExporter == null ? getServletRequest() : null;
 
-		RemoteInvocation call = new RemoteInvocation(method.getName(), method.getParameterTypes(), arguments);
-		Map<String, Object> backupAttributes = backupAndRemoveAttributes(servletRequest);
+		long start = metrics != null ? System.nanoTime() : 0;
+		if (transferMode != TransferMode.SERIALIZE) {
+			return dispatch(null, call, servletRequest, endpoint, wrap, metrics, start);
+		}
 
+		// binary arguments are handed over next to the encoded invocation, and
+		// binary results come back the same way, while invocations made only
+		// of immutable JDK values can be shared as they are
+		Object[] binaries = null;
+		if (methodIndex >= 0 && binaryMethods[methodIndex] && call instanceof RemoteInvocation) {
+			binaries = BinaryPayloads.detachArguments((RemoteInvocation) call);
+		} else if (call instanceof RemoteInvocation) {
+			Object[] envelope = ImmutableInvocations.wrapInvocation((RemoteInvocation) call);
+			if (envelope != null) {
+				return dispatch(codec.getName(), envelope, servletRequest, endpoint, wrap, metrics, start);
+			}
+		}
+
+		// the invocation is encoded into a pooled buffer and handed over as a
+		// view, which is only valid until the buffer is released
+		EncodingBuffer buffer = EncodingBuffer.lease(requestSizeHints != null ? requestSizeHints.get(methodIndex) : 0);
+		try {
+			CodecUtils.encode(codec, call, buffer);
+			if (requestSizeHints != null) {
+				requestSizeHints.record(methodIndex, buffer.size());
+			}
+			if (metrics != null) {
+				long now = System.nanoTime();
+				metrics.recordSerialize(now - start);
+				metrics.recordRequestSize(buffer.size());
+				start = now;
+			}
+			Object payload = binaries != null ? BinaryPayloads.wrapInvocation(buffer.view(), binaries) : buffer.view();
+			return dispatch(codec.getName(), payload, servletRequest, endpoint, wrap, metrics, start);
+		} finally {
+			buffer.release();
+		}
+	}
+
+	private Object dispatch(String codecName, Object payload, HttpServletRequest servletRequest, ResolvedEndpoint endpoint, boolean wrap,
+			MethodMetrics metrics, long start) throws ServletException, IOException {
 		Object value;
+		boolean dispatched = false;
 
 		try {
-			servletRequest.setAttribute(INVOCATION_ATTR, serialize ? serializingConverter.convert(call) : call);
-			RequestDispatcher requestDispatcher = remoteContext.getRequestDispatcher(contextRelativeServicePath);
-			requestDispatcher.include(servletRequest, getServletResponse());
+			if (endpoint.directExporter != null) {
+				value = dispatchDirect(endpoint, codecName, payload);
+			} else if (wrap) {
+				value = dispatchWrapped(endpoint, servletRequest, getServletResponse(), codecName, payload);
+			} else {
+				value = dispatchWithAttributes(endpoint, servletRequest, getServletResponse(), codecName, payload);
+			}
+			dispatched = true;
 		} finally {
-			value = servletRequest.getAttribute(INVOCATION_RESULT_ATTR);
-			servletRequest.removeAttribute(INVOCATION_ATTR);
-			servletRequest.removeAttribute(INVOCATION_RESULT_ATTR);
-			restoreAttributes(servletRequest, backupAttributes);
+			if (!dispatched) {
+				invalidateEndpoint(endpoint);
+			}
+		}
+
+		if (metrics != null) {
+			long now = System.nanoTime();
+			metrics.recordDispatch(now - start);
+			start = now;
 		}
 
 		if (value == null) {
+			invalidateEndpoint(endpoint);
 			throw new IllegalStateException(format("Could not get the invocation response. Please ensure that %s is a valid url and that the spring "
 					+ "DispatcherServlet serving it doesn't clean attributes after includes "
 					+ "(see org.springframework.web.servlet.DispatcherServlet#setCleanupAfterInclude(boolean))", getServiceUrl()));
 		}
 
-		RemoteInvocationResult callReturn;
-		if (serialize) {
-			callReturn = (RemoteInvocationResult) deserializingConverter.convert((byte[]) value);
+		Object result;
+		if (CompactExceptions.isException(value)) {
+			result = new RemoteInvocationResult(CompactExceptions.unwrap(value, getBeanClassLoader()));
+		} else if (transferMode == TransferMode.SERIALIZE) {
+			if (ImmutableInvocations.isResult(value)) {
+				result = ImmutableInvocations.unwrapResult(value);
+			} else if (BinaryPayloads.isResult(value)) {
+				result = BinaryPayloads.unwrapResult(value);
+			} else {
+				result = CodecUtils.decodePayload(codec, value, getBeanClassLoader());
+			}
+		} else if (transferMode == TransferMode.COPY) {
+			result = getCopier().copy(value);
+		} else if (transferMode == TransferMode.AUTO) {
+			result = getCopier().share(value);
 		} else {
-			callReturn = (RemoteInvocationResult) value;
+			result = value;
 		}
 
-		if (callReturn.getException() != null) {
-			throw callReturn.getException();
+		if (metrics != null) {
+			metrics.recordDeserialize(System.nanoTime() - start);
+			if (CodecUtils.isPayload(value)) {
+				metrics.recordResponseSize(CodecUtils.sizeOf(value));
+			}
 		}
+		return result;
+	}
 
-		return callReturn.getValue();
+	private Object dispatchWithAttributes(ResolvedEndpoint endpoint, HttpServletRequest request, HttpServletResponse response, String codecName,
+			Object payload) throws ServletException, IOException {
+		Map<String, Object> backupAttributes = backupAndRemoveAttributes(request);
+		try {
+			if (codecName != null) {
+				request.setAttribute(INVOCATION_CODEC_ATTR, codecName);
+			}
+			request.setAttribute(INVOCATION_ATTR, payload);
+			endpoint.dispatcher.include(request, response);
+			return request.getAttribute(INVOCATION_RESULT_ATTR);
+		} finally {
+			request.removeAttribute(INVOCATION_ATTR);
+			request.removeAttribute(INVOCATION_CODEC_ATTR);
+			request.removeAttribute(INVOCATION_RESULT_ATTR);
+			restoreAttributes(request, backupAttributes);
+		}
+	}
+
+	/**
+	 * Hands the invocation over to the exporter registered in the remote
+	 * context, directly or reflectively when its class comes from another
+	 * class loader.
+	 */
+	private Object dispatchDirect(ResolvedEndpoint endpoint, String codecName, Object payload) {
+		if (endpoint.directMethod == null) {
+			return ((CrossContextServiceExporter) endpoint.directExporter).invokeDirect(payload, codecName);
+		}
+		try {
+			return endpoint.directMethod.invoke(endpoint.directExporter, payload, codecName);
+		} catch (InvocationTargetException e) {
+			ReflectionUtils.rethrowRuntimeException(e.getTargetException());
+		} catch (IllegalAccessException e) {
+			ReflectionUtils.handleReflectionException(e);
+		}
+		throw new IllegalStateException("Should never get here");
+	}
+
+	private Object dispatchWrapped(ResolvedEndpoint endpoint, HttpServletRequest request, HttpServletResponse response, String codecName, Object payload)
+			throws ServletException, IOException {
+		InvocationRequestWrapper wrapper = new InvocationRequestWrapper(request, codecName, payload);
+		endpoint.dispatcher.include(wrapper, response);
+		return wrapper.getResult();
+	}
+
+	private DeepCopier getCopier() {
+		DeepCopier copier = this.copier;
+		if (copier == null) {
+			copier = new DeepCopier(getBeanClassLoader());
+			this.copier = copier;
+		}
+		return copier;
+	}
+
+	/**
+	 * Returns the endpoint for the configured service url, reusing the cached
+	 * one while it's still valid.
+	 */
+	private ResolvedEndpoint resolveEndpoint() {
+		ResolvedEndpoint endpoint = this.resolvedEndpoint;
+		if (endpoint != null && isStillValid(endpoint)) {
+			endpointCacheHits.incrementAndGet();
+			return endpoint;
+		}
+		endpointCacheMisses.incrementAndGet();
+
+		String remoteContextPath = getRemoteContextPath();
+		ServletContext remoteContext = servletContext.getContext(remoteContextPath);
+		if (remoteContext == null) {
+			throw new IllegalStateException(format("Servlet context for %s could not be found. Ensure the corresponding context supports cross context calls!",
+					remoteContextPath));
+		}
+
+		String contextRelativeServicePath = getServiceUrl().substring(remoteContext.getContextPath().length());
+		Object directExporter = null;
+		Method directMethod = null;
+		if (directDispatch) {
+			directExporter = remoteContext.getAttribute(getDirectExporterAttribute(contextRelativeServicePath));
+			if (directExporter != null && !(directExporter instanceof CrossContextServiceExporter)) {
+				try {
+					directMethod = directExporter.getClass().getMethod("invokeDirect", Object.class, String.class);
+				} catch (NoSuchMethodException e) {
+					logger.warn("The exporter registered for " + getServiceUrl() + " doesn't support direct dispatch, falling back to includes");
+					directExporter = null;
+				}
+			}
+		}
+
+		RequestDispatcher dispatcher = remoteContext.getRequestDispatcher(contextRelativeServicePath);
+		if (dispatcher == null && directExporter == null) {
+			throw new IllegalStateException(format("Could not get a request dispatcher for %s in servlet context %s", contextRelativeServicePath,
+					remoteContextPath));
+		}
+
+		endpoint = new ResolvedEndpoint(remoteContextPath, remoteContext, contextRelativeServicePath, dispatcher, directExporter, directMethod);
+		endpoint.revalidateAt = System.currentTimeMillis() + endpointRevalidationInterval;
+		this.lastRemoteContext = remoteContext;
+		if (cacheEndpoint) {
+			this.resolvedEndpoint = endpoint;
+		}
+		return endpoint;
+	}
+
+	private boolean isStillValid(ResolvedEndpoint endpoint) {
+		if (endpointRevalidationInterval < 0) {
+			return true;
+		}
+		long now = System.currentTimeMillis();
+		if (now < endpoint.revalidateAt) {
+			return true;
+		}
+		// the remote context may have been redeployed, in which case a new
+		// servlet context instance is bound to the same context path
+		if (servletContext.getContext(endpoint.contextPath) != endpoint.context) {
+			invalidateEndpoint(endpoint);
+			return false;
+		}
+		// or the exporter registered for direct dispatch replaced
+		if (directDispatch && endpoint.context.getAttribute(getDirectExporterAttribute(endpoint.servicePath)) != endpoint.directExporter) {
+			invalidateEndpoint(endpoint);
+			return false;
+		}
+		endpoint.revalidateAt = now + endpointRevalidationInterval;
+		return true;
+	}
+
+	private void invalidateEndpoint(ResolvedEndpoint endpoint) {
+		if (this.resolvedEndpoint == endpoint) {
+			this.resolvedEndpoint = null;
+		}
 	}
 
 	protected Map<String, Object> backupAndRemoveAttributes(HttpServletRequest request) {
@@ -268,6 +1500,26 @@ public class CrossContextProxyBeanFactory extends RemoteInvocationBasedAccessor
 		return getServiceUrl().substring(0, indexOf);
 	}
 
+	/**
+	 * Returns whether the current thread has no request bound and the call
+	 * must go through a synthetic one.
+	 */
+	private boolean isHeadless() {
+		return allowHeadless && RequestAndResponseHolder.getHttpServletRequest() == null;
+	}
+
+	/**
+	 * Returns the locale of the calling request, as taken when it was
+	 * propagated to the current thread if it was.
+	 */
+	private Locale getCallerLocale() {
+		RequestAndResponse requestAndResponse = RequestAndResponseHolder.getRequestAndResponse();
+		if (requestAndResponse != null && requestAndResponse.isPropagated()) {
+			return requestAndResponse.getLocale();
+		}
+		return getServletRequest().getLocale();
+	}
+
 	protected HttpServletRequest getServletRequest() {
 		HttpServletRequest request = RequestAndResponseHolder.getHttpServletRequest();
 		if (request == null) {
@@ -286,4 +1538,94 @@ public class CrossContextProxyBeanFactory extends RemoteInvocationBasedAccessor
 		return response;
 	}
 
-}
+	/**
+	 * Invocation handler of lightweight proxies.
+	 * 
+	 * @see CrossContextProxyBeanFactory#setLightweightProxy(boolean)
+	 */
+	private class ServiceStub implements InvocationHandler {
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (AopUtils.isEqualsMethod(method)) {
+				return proxy == args[0];
+			}
+			if (AopUtils.isHashCodeMethod(method)) {
+				return System.identityHashCode(proxy);
+			}
+			if (AopUtils.isToStringMethod(method)) {
+				return "Cross context proxy for " + getServiceUrl();
+			}
+			return CrossContextProxyBeanFactory.this.invoke(method, args);
+		}
+	}
+
+	/**
+	 * A call in flight that identical calls may join until it completes.
+	 */
+	private static final class CoalescedCall {
+		private final CountDownLatch done = new CountDownLatch(1);
+		private boolean closed;
+		private boolean joined;
+		private Object cached;
+		private Throwable failure;
+
+		synchronized boolean join() {
+			if (closed) {
+				return false;
+			}
+			joined = true;
+			return true;
+		}
+
+		/**
+		 * Stops other calls from joining, and returns whether any did.
+		 */
+		synchronized boolean close() {
+			closed = true;
+			return joined;
+		}
+
+		void complete(Object cached, Throwable failure) {
+			synchronized (this) {
+				this.cached = cached;
+				this.failure = failure;
+			}
+			done.countDown();
+		}
+
+		Object await() throws Throwable {
+			done.await();
+			synchronized (this) {
+				if (failure != null) {
+					throw failure;
+				}
+				return cached;
+			}
+		}
+	}
+
+	/**
+	 * A remote servlet context, the service path relative to it and the
+	 * request dispatcher serving that path.
+	 */
+	private static final class ResolvedEndpoint {
+		final String contextPath;
+		final ServletContext context;
+		final String servicePath;
+		final RequestDispatcher dispatcher;
+		final Object directExporter;
+		final Method directMethod;
+		volatile long revalidateAt;
+
+		ResolvedEndpoint(String contextPath, ServletContext context, String servicePath, RequestDispatcher dispatcher, Object directExporter,
+				Method directMethod) {
+			this.contextPath = contextPath;
+			this.context = context;
+			this.servicePath = servicePath;
+			this.dispatcher = dispatcher;
+			this.directExporter = directExporter;
+			this.directMethod = directMethod;
+		}
+	}
+
+}
\ No newline at end of file
@@ -1,42 +1,303 @@
 package com.vilt.spring.remoting.crosscontext;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.springframework.beans.factory.BeanNameAware;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
-import org.springframework.core.serializer.support.DeserializingConverter;
-import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.core.serializer.support.SerializationFailedException;
 import org.springframework.remoting.support.RemoteInvocation;
 import org.springframework.remoting.support.RemoteInvocationBasedExporter;
 import org.springframework.remoting.support.RemoteInvocationResult;
+import org.springframework.util.ReflectionUtils;
 import org.springframework.web.HttpRequestHandler;
+import org.springframework.web.context.ServletContextAware;
 
-public class CrossContextServiceExporter extends RemoteInvocationBasedExporter implements InitializingBean, DisposableBean, HttpRequestHandler {
+import com.vilt.spring.remoting.crosscontext.codec.CodecUtils;
+import com.vilt.spring.remoting.crosscontext.codec.CrossContextCodec;
+import com.vilt.spring.remoting.crosscontext.codec.EncodingBuffer;
+import com.vilt.spring.remoting.crosscontext.codec.JdkSerializationCodec;
+import com.vilt.spring.remoting.crosscontext.codec.PayloadSizeHints;
+import com.vilt.spring.remoting.crosscontext.copy.DeepCopier;
+import com.vilt.spring.remoting.crosscontext.metrics.InvocationMetrics;
+import com.vilt.spring.remoting.crosscontext.metrics.MethodMetrics;
+
+public class CrossContextServiceExporter extends RemoteInvocationBasedExporter implements InitializingBean, DisposableBean, HttpRequestHandler, BeanNameAware,
+		ServletContextAware {
+	
+	/**
+	 * Type of the JMX MBeans exposing the metrics of exporters.
+	 * 
+	 * @see #setMetricsEnabled(boolean)
+	 */
+	public static final String METRICS_TYPE = "CrossContextExporter";
+	
+	/**
+	 * Prefix of the servlet context attribute, followed by the direct service
+	 * name, by default the service path, holding the exporter itself for
+	 * direct dispatch.
+	 * 
+	 * @see #setDirectServiceName(String)
+	 */
+	public static final String DIRECT_EXPORTER_ATTR_PREFIX = CrossContextServiceExporter.class.getName() + ".DIRECT.";
+	
+	/**
+	 * Prefix of the servlet context attribute, followed by the service
+	 * interface name, holding the cache generation of the exported service.
+	 * 
+	 * @see #invalidateCache()
+	 */
+	public static final String CACHE_GENERATION_ATTR_PREFIX = CrossContextServiceExporter.class.getName() + ".CACHE_GENERATION.";
+	
+	/**
+	 * Default time, in milliseconds, after which idle cursors are released.
+	 * 
+	 * @see #setCursorTimeout(long)
+	 */
+	public static final long DEFAULT_CURSOR_TIMEOUT = 60000;
+	
+	private static final StackTraceElement[] NO_STACK_TRACE = new StackTraceElement[0];
 	
-	private SerializingConverter serializingConverter = new SerializingConverter();
-	private DeserializingConverter deserializingConverter = new DeserializingConverter();
+	private CrossContextCodec codec = new JdkSerializationCodec();
 	
-	private boolean serialize = true;
+	private TransferMode transferMode = TransferMode.SERIALIZE;
+	private ExceptionTransport declaredExceptionTransport = ExceptionTransport.FULL;
+	private volatile DeepCopier copier;
+	private volatile ServiceMethodTable methodTable;
+	private volatile PayloadSizeHints resultSizeHints;
+	private boolean metricsEnabled = false;
+	private MBeanServer mbeanServer;
+	private InvocationMetrics metrics;
+	private String beanName;
+	private ServletContext servletContext;
+	private String directServiceName;
+	private ClassLoader contextClassLoader;
+	private volatile boolean destroyed;
+	private long cursorTimeout = DEFAULT_CURSOR_TIMEOUT;
+	private final Map<String, Cursor> cursors = new ConcurrentHashMap<String, Cursor>();
+	private final String cursorIdPrefix = UUID.randomUUID().toString() + "-";
+	private final AtomicLong cursorCounter = new AtomicLong();
 	
 	public void destroy() throws Exception {
-		// nothing to do here...
+		destroyed = true;
+		if (directServiceName != null && servletContext != null && servletContext.getAttribute(DIRECT_EXPORTER_ATTR_PREFIX + directServiceName) == this) {
+			servletContext.removeAttribute(DIRECT_EXPORTER_ATTR_PREFIX + directServiceName);
+		}
+		if (metrics != null) {
+			metrics.unregisterMBeans();
+		}
+		CodecUtils.clearCache(codec, getBeanClassLoader());
+		EncodingBuffer.clearPool();
+		for (String cursorId : cursors.keySet()) {
+			closeCursor(cursorId);
+		}
 	}
 
 	public void afterPropertiesSet() throws Exception {
-		// nothing to do here...
+		if (getServiceInterface() != null) {
+			this.methodTable = new ServiceMethodTable(getServiceInterface());
+			if (metricsEnabled) {
+				String serviceUrl = beanName != null ? beanName : getServiceInterface().getName();
+				this.metrics = new InvocationMetrics(METRICS_TYPE, servletContext != null ? servletContext.getContextPath() : null, serviceUrl, methodTable);
+				try {
+					metrics.registerMBeans(mbeanServer != null ? mbeanServer : ManagementFactory.getPlatformMBeanServer());
+				} catch (JMException e) {
+					logger.warn("Could not register the invocation metrics MBeans of " + serviceUrl, e);
+				}
+			}
+		}
+		else if (metricsEnabled) {
+			throw new IllegalArgumentException("Metrics require the serviceInterface property to be set");
+		}
+		
+		this.contextClassLoader = Thread.currentThread().getContextClassLoader();
+		if (directServiceName != null) {
+			if (getServiceInterface() == null) {
+				throw new IllegalArgumentException("Direct dispatch requires the serviceInterface property to be set");
+			}
+			if (servletContext != null) {
+				String attribute = DIRECT_EXPORTER_ATTR_PREFIX + directServiceName;
+				Object registered = servletContext.getAttribute(attribute);
+				if (registered != null && registered != this) {
+					throw new IllegalStateException("Another exporter is already registered for direct dispatch as " + directServiceName);
+				}
+				servletContext.setAttribute(attribute, this);
+			}
+		}
+	}
+
+	public void setBeanName(String beanName) {
+		this.beanName = beanName;
+	}
+
+	public void setServletContext(ServletContext servletContext) {
+		this.servletContext = servletContext;
+	}
+
+	/**
+	 * Set the name under which this exporter is registered in its servlet
+	 * context for direct dispatch, which proxies must use as well. Proxies
+	 * use the path of the service relative to its context by default, such as
+	 * <code>/remoting/MyService</code>, which this name should then be. Default
+	 * is <code>null</code>, in which case this exporter isn't registered and
+	 * is only reached through includes. Exporters of the same context can't
+	 * share a name.
+	 * 
+	 * @see CrossContextProxyBeanFactory#setDirectDispatch(boolean)
+	 */
+	public void setDirectServiceName(String directServiceName) {
+		this.directServiceName = directServiceName;
+	}
+
+	public String getDirectServiceName() {
+		return directServiceName;
+	}
+
+	/**
+	 * Makes every {@link CrossContextProxyBeanFactory} of the exported service
+	 * drop the results it cached for {@link CrossContextCacheable} methods,
+	 * before their next call. Proxies notice it through a generation counter
+	 * published as an attribute of this exporter's servlet context.
+	 */
+	public void invalidateCache() {
+		if (servletContext == null || getServiceInterface() == null) {
+			throw new IllegalStateException("Cache invalidation requires the servlet context and the serviceInterface property to be set");
+		}
+		String name = CACHE_GENERATION_ATTR_PREFIX + getServiceInterface().getName();
+		synchronized (servletContext) {
+			Object generation = servletContext.getAttribute(name);
+			if (generation instanceof AtomicLong) {
+				((AtomicLong) generation).incrementAndGet();
+			} else {
+				servletContext.setAttribute(name, new AtomicLong(1));
+			}
+		}
+	}
+
+	/**
+	 * Set whether per method invocation metrics are recorded and exposed as
+	 * JMX MBeans. Default is <code>false</code>. Requires the
+	 * <code>serviceInterface</code> property, and the bean name (the service
+	 * path, usually) is used to tell exporters apart.
+	 * 
+	 * @see InvocationMetrics
+	 */
+	public void setMetricsEnabled(boolean metricsEnabled) {
+		this.metricsEnabled = metricsEnabled;
+	}
+
+	public boolean isMetricsEnabled() {
+		return metricsEnabled;
+	}
+
+	/**
+	 * Set the MBean server where metrics MBeans are registered. Default is the
+	 * platform MBean server.
+	 */
+	public void setMBeanServer(MBeanServer mbeanServer) {
+		this.mbeanServer = mbeanServer;
+	}
+
+	/**
+	 * Returns the invocation metrics, or <code>null</code> if they're not
+	 * enabled.
+	 */
+	public InvocationMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Set the time, in milliseconds, after which cursors of
+	 * {@link CrossContextStreaming} methods that weren't fetched from are
+	 * released. Default is {@link #DEFAULT_CURSOR_TIMEOUT}.
+	 */
+	public void setCursorTimeout(long cursorTimeout) {
+		this.cursorTimeout = cursorTimeout;
+	}
+
+	public long getCursorTimeout() {
+		return cursorTimeout;
+	}
+
+	/**
+	 * Returns the number of cursors of {@link CrossContextStreaming} methods
+	 * currently open.
+	 */
+	public int getOpenCursors() {
+		return cursors.size();
 	}
 
 	public void setSerialize(boolean serialize) {
-		this.serialize = serialize;
+		this.transferMode = serialize ? TransferMode.SERIALIZE : TransferMode.REFERENCE;
 	}
 	
 	public boolean isSerialize() {
-		return serialize;
+		return transferMode == TransferMode.SERIALIZE;
+	}
+
+	/**
+	 * Set how invocations and their results are handed over from and to the
+	 * calling context. Must match the transfer mode of the
+	 * {@link CrossContextProxyBeanFactory} on the other side. Default is
+	 * {@link TransferMode#SERIALIZE}.
+	 * 
+	 * @see #setSerialize(boolean)
+	 */
+	public void setTransferMode(TransferMode transferMode) {
+		this.transferMode = transferMode;
+	}
+
+	public TransferMode getTransferMode() {
+		return transferMode;
+	}
+
+	/**
+	 * Set the codec used to decode invocations and encode their results when
+	 * <code>serialize</code> is enabled. It must have the same name as the one
+	 * configured in the {@link CrossContextProxyBeanFactory} on the other
+	 * side. Default is {@link JdkSerializationCodec}.
+	 */
+	public void setCodec(CrossContextCodec codec) {
+		this.codec = codec;
+	}
+
+	public CrossContextCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Set how exceptions declared by the invoked service method, such as
+	 * business exceptions used for control flow, are handed over to the
+	 * calling context. Other exceptions are always transported in full.
+	 * Default is {@link ExceptionTransport#FULL}.
+	 */
+	public void setDeclaredExceptionTransport(ExceptionTransport declaredExceptionTransport) {
+		this.declaredExceptionTransport = declaredExceptionTransport;
+	}
+
+	public ExceptionTransport getDeclaredExceptionTransport() {
+		return declaredExceptionTransport;
 	}
 	
 	public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
@@ -48,30 +309,411 @@ public class CrossContextServiceExporter extends RemoteInvocationBasedExporter i
 					"com.vilt.spring.remoting.crosscontext.CrossContextProxyBeanFactory instance or a subclass.");
 		}
 		
-		RemoteInvocation call;
-		if (serialize) {
-			if (!(value instanceof byte[])) {
+		Object codecName = request.getAttribute(CrossContextProxyBeanFactory.INVOCATION_CODEC_ATTR);
+		request.setAttribute(CrossContextProxyBeanFactory.INVOCATION_RESULT_ATTR, handleInvocation(value, codecName, false));
+	}
+	
+	/**
+	 * Executes an invocation handed over directly by a
+	 * {@link CrossContextProxyBeanFactory} in another context, without a
+	 * request dispatch, and returns its result in the same form the result
+	 * request attribute would have. The thread context class loader is
+	 * switched to the one of this exporter's context during the call.
+	 * 
+	 * <p>
+	 * Proxies may call this method reflectively, since the exporter class seen
+	 * by them may come from another class loader, so its signature must only
+	 * use JDK types.
+	 * 
+	 * @see CrossContextProxyBeanFactory#setDirectDispatch(boolean)
+	 */
+	public Object invokeDirect(Object value, String codecName) {
+		if (getServiceInterface() == null) {
+			throw new IllegalStateException("Direct dispatch requires the serviceInterface property of the exporter to be set");
+		}
+		if (destroyed) {
+			throw new IllegalStateException("The exporter of " + getServiceInterface().getName() + " was destroyed");
+		}
+		Thread thread = Thread.currentThread();
+		ClassLoader previousClassLoader = thread.getContextClassLoader();
+		thread.setContextClassLoader(contextClassLoader);
+		try {
+			return handleInvocation(value, codecName, true);
+		} finally {
+			thread.setContextClassLoader(previousClassLoader);
+		}
+	}
+	
+	/**
+	 * Executes the given invocation and returns its result, in the form
+	 * expected by the proxy on the other side. Results are only encoded into
+	 * a pooled buffer when <code>direct</code>, since the proxy then decodes
+	 * them as soon as this method returns, whereas after an include the
+	 * remote dispatcher's interceptors and filters still run on this thread,
+	 * and may make cross context calls of their own, before it does.
+	 */
+	private Object handleInvocation(Object value, Object codecName, boolean direct) {
+		long start = metrics != null ? System.nanoTime() : 0;
+		Object call;
+		boolean immutableInvocation = transferMode == TransferMode.SERIALIZE && ImmutableInvocations.isInvocation(value);
+		boolean binaryInvocation = transferMode == TransferMode.SERIALIZE && BinaryPayloads.isInvocation(value);
+		Object payload = binaryInvocation ? BinaryPayloads.getPayload(value) : value;
+		if (immutableInvocation) {
+			checkCodec(codecName);
+			try {
+				call = ImmutableInvocations.unwrapInvocation(value, getBeanClassLoader());
+			} catch (ClassNotFoundException e) {
+				throw new SerializationFailedException("Failed to resolve the parameter types of the invocation", e);
+			}
+		}
+		else if (transferMode == TransferMode.SERIALIZE) {
+			if (!CodecUtils.isPayload(payload)) {
 				throw new IllegalStateException("A serialized object was expected. Ensure that the " +
 						"com.vilt.spring.remoting.crosscontext.CrossContextProxyBeanFactory on the other side is configured with" +
 						"serialize=\"true\".");
 			}
 			
-			call = (RemoteInvocation) deserializingConverter.convert((byte[]) value);
+			checkCodec(codecName);
+			call = CodecUtils.decodePayload(codec, payload, getBeanClassLoader());
+			if (binaryInvocation) {
+				BinaryPayloads.attachArguments((RemoteInvocation) call, value);
+			}
+		}
+		else if (CodecUtils.isPayload(value)) {
+			throw new IllegalStateException("A serialized object was not expected. Ensure that the " +
+					"com.vilt.spring.remoting.crosscontext.CrossContextProxyBeanFactory on the other side is configured with " +
+					"the same transfer mode (" + transferMode + ").");
+		}
+		else if (transferMode == TransferMode.COPY) {
+			call = getCopier().copy(value);
+		}
+		else if (transferMode == TransferMode.AUTO) {
+			call = getCopier().share(value);
+		}
+		else {
+			call = value;
+		}
+		
+		MethodMetrics callMetrics = null;
+		if (metrics != null) {
+			callMetrics = call instanceof List ? metrics.getBatchMetrics() : getMethodMetrics((RemoteInvocation) call);
+			callMetrics.recordCall();
+			long now = System.nanoTime();
+			callMetrics.recordDeserialize(now - start);
+			if (CodecUtils.isPayload(payload)) {
+				callMetrics.recordRequestSize(CodecUtils.sizeOf(payload));
+			}
+			start = now;
+		}
+		
+		Object result;
+		if (call instanceof List) {
+			// a batch of invocations, executed in order
+			List<?> calls = (List<?>) call;
+			List<RemoteInvocationResult> results = new ArrayList<RemoteInvocationResult>(calls.size());
+			for (Object batchCall : calls) {
+				results.add(execute((RemoteInvocation) batchCall, null));
+			}
+			result = results;
 		}
 		else {
-			call = (RemoteInvocation) value;
+			result = execute((RemoteInvocation) call, callMetrics);
+		}
+		
+		if (callMetrics != null) {
+			long now = System.nanoTime();
+			callMetrics.recordExecute(now - start);
+			start = now;
 		}
 		
-		RemoteInvocationResult result;
+		Object[] compactException = declaredExceptionTransport == ExceptionTransport.COMPACT && call instanceof RemoteInvocation ?
+				compactException((RemoteInvocation) call, (RemoteInvocationResult) result) : null;
+		if (compactException != null) {
+			if (transferMode == TransferMode.SERIALIZE) {
+				recordSerialize(callMetrics, start, 0);
+			}
+			return compactException;
+		}
+		
+		if (transferMode != TransferMode.SERIALIZE) {
+			return result;
+		}
 		
+		Object[] sharedResult = null;
+		if (immutableInvocation) {
+			sharedResult = ImmutableInvocations.wrapResult(result);
+		}
+		else if (binaryInvocation) {
+			sharedResult = BinaryPayloads.wrapResult(result);
+		}
+		if (sharedResult != null) {
+			recordSerialize(callMetrics, start, 0);
+			return sharedResult;
+		}
+		else if (direct) {
+			// the proxy decodes the result right after this method returns,
+			// before this thread encodes anything else, so the buffer can go
+			// back to the pool already
+			int methodIndex = call instanceof IndexedRemoteInvocation ? ((IndexedRemoteInvocation) call).getMethodIndex() : -1;
+			PayloadSizeHints sizeHints = getResultSizeHints();
+			EncodingBuffer buffer = EncodingBuffer.lease(sizeHints.get(methodIndex));
+			try {
+				CodecUtils.encode(codec, result, buffer);
+				sizeHints.record(methodIndex, buffer.size());
+				recordSerialize(callMetrics, start, buffer.size());
+				return buffer.view();
+			} finally {
+				buffer.release();
+			}
+		}
+		else {
+			byte[] encodedResult = CodecUtils.encode(codec, result);
+			recordSerialize(callMetrics, start, encodedResult.length);
+			return encodedResult;
+		}
+	}
+	
+	private void checkCodec(Object codecName) {
+		if (codecName != null && !codec.getName().equals(codecName)) {
+			throw new IllegalStateException("The invocation was encoded with the " + codecName + " codec but this exporter uses the " +
+					codec.getName() + " codec. Ensure that both sides are configured with the same codec.");
+		}
+	}
+	
+	private void recordSerialize(MethodMetrics callMetrics, long start, int size) {
+		if (callMetrics != null) {
+			callMetrics.recordSerialize(System.nanoTime() - start);
+			callMetrics.recordResponseSize(size);
+		}
+	}
+	
+	private RemoteInvocationResult execute(RemoteInvocation call, MethodMetrics callMetrics) {
+		RemoteInvocationResult result = execute(call);
+		if (result.hasException()) {
+			if (callMetrics != null) {
+				callMetrics.recordError();
+			}
+			if (declaredExceptionTransport != ExceptionTransport.FULL && isDeclaredException(call, result.getException())) {
+				// stack trace elements are only built when first needed, as when
+				// the exception is serialized, so clearing them spares building them
+				for (Throwable exception = result.getException(); exception != null; exception = exception.getCause()) {
+					exception.setStackTrace(NO_STACK_TRACE);
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the envelope of the declared exception thrown by the given
+	 * invocation, or <code>null</code> if it didn't throw one or the exception
+	 * can't be rebuilt by the calling context.
+	 */
+	private Object[] compactException(RemoteInvocation call, RemoteInvocationResult result) {
+		if (!result.hasException() || !isDeclaredException(call, result.getException())) {
+			return null;
+		}
+		return CompactExceptions.wrap(result.getException());
+	}
+	
+	private boolean isDeclaredException(RemoteInvocation call, Throwable exception) {
+		if (exception instanceof Error || call instanceof CursorInvocation) {
+			return false;
+		}
+		Method method = resolveMethod(call);
+		if (method == null) {
+			return false;
+		}
+		for (Class<?> exceptionType : method.getExceptionTypes()) {
+			if (exceptionType.isInstance(exception)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private RemoteInvocationResult execute(RemoteInvocation call) {
 		try {
-			result = new RemoteInvocationResult(call.invoke(getService()));
+			Object value;
+			if (call instanceof CursorInvocation) {
+				return new RemoteInvocationResult(fetchCursor((CursorInvocation) call));
+			}
+			else if (call instanceof IndexedRemoteInvocation) {
+				value = invoke((IndexedRemoteInvocation) call);
+			}
+			else {
+				value = call.invoke(getService());
+			}
+			if (value instanceof Future) {
+				// asynchronous methods are waited for here, on the proxy's executor
+				// thread, since futures can't be handed over to the calling context
+				value = ((Future<?>) value).get();
+			}
+			else if (value instanceof Iterator) {
+				value = openCursor(call, (Iterator<?>) value);
+			}
+			return new RemoteInvocationResult(value);
 		} catch (InvocationTargetException e) {
-			result = new RemoteInvocationResult(e.getTargetException());
+			return new RemoteInvocationResult(e.getTargetException());
+		} catch (ExecutionException e) {
+			return new RemoteInvocationResult(e.getCause() != null ? e.getCause() : e);
 		} catch (Throwable e) {
-			result = new RemoteInvocationResult(e);
+			return new RemoteInvocationResult(e);
+		}
+	}
+	
+	private Object invoke(IndexedRemoteInvocation call) throws IllegalAccessException, InvocationTargetException {
+		ServiceMethodTable methodTable = getMethodTable();
+		if (!methodTable.getFingerprint().equals(call.getFingerprint())) {
+			throw new IllegalStateException("The service interface " + methodTable.getServiceInterface().getName() + " exported by this " +
+					"exporter doesn't match the one used by the calling proxy. Ensure that both sides use the same version of the interface.");
+		}
+		return methodTable.getMethod(call.getMethodIndex()).invoke(getService(), call.getArguments());
+	}
+	
+	/**
+	 * Keeps the iterator returned by a {@link CrossContextStreaming} method as
+	 * a cursor and returns its first chunk. Iterators returned by other
+	 * methods are returned as they are.
+	 */
+	private Object openCursor(RemoteInvocation call, Iterator<?> iterator) {
+		Method method = resolveMethod(call);
+		CrossContextStreaming streaming = method != null ? AnnotationUtils.findAnnotation(method, CrossContextStreaming.class) : null;
+		if (streaming == null) {
+			return iterator;
+		}
+		
+		closeExpiredCursors();
+		String cursorId = cursorIdPrefix + cursorCounter.incrementAndGet();
+		Cursor cursor = new Cursor(iterator, streaming.chunkSize(), currentTimeMillis());
+		cursors.put(cursorId, cursor);
+		return nextChunk(cursorId, cursor);
+	}
+	
+	/**
+	 * Returns the service method invoked by the given invocation, or
+	 * <code>null</code> if it can't be found.
+	 */
+	private Method resolveMethod(RemoteInvocation call) {
+		if (call instanceof IndexedRemoteInvocation) {
+			return getMethodTable().getMethod(((IndexedRemoteInvocation) call).getMethodIndex());
+		}
+		Class<?> type = getServiceInterface() != null ? getServiceInterface() : getService().getClass();
+		return ReflectionUtils.findMethod(type, call.getMethodName(), call.getParameterTypes());
+	}
+	
+	private CursorChunk fetchCursor(CursorInvocation call) {
+		if (call.isClose()) {
+			closeCursor(call.getCursorId());
+			return null;
+		}
+		closeExpiredCursors();
+		Cursor cursor = cursors.get(call.getCursorId());
+		if (cursor == null) {
+			throw new IllegalStateException("Cursor " + call.getCursorId() + " was closed or expired");
+		}
+		return nextChunk(call.getCursorId(), cursor);
+	}
+	
+	private CursorChunk nextChunk(String cursorId, Cursor cursor) {
+		List<Object> elements;
+		boolean last;
+		synchronized (cursor) {
+			cursor.lastAccess = currentTimeMillis();
+			elements = new ArrayList<Object>(cursor.chunkSize);
+			while (elements.size() < cursor.chunkSize && cursor.iterator.hasNext()) {
+				elements.add(cursor.iterator.next());
+			}
+			last = !cursor.iterator.hasNext();
 		}
+		if (last) {
+			closeCursor(cursorId);
+		}
+		return new CursorChunk(cursorId, elements, last);
+	}
+	
+	private void closeExpiredCursors() {
+		long expiry = currentTimeMillis() - cursorTimeout;
+		for (Map.Entry<String, Cursor> entry : cursors.entrySet()) {
+			if (entry.getValue().lastAccess < expiry) {
+				closeCursor(entry.getKey());
+			}
+		}
+	}
+	
+	/**
+	 * Returns the time cursor accesses and expiry are measured against.
+	 * Overridden by tests to expire cursors without waiting.
+	 */
+	long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+	
+	private void closeCursor(String cursorId) {
+		Cursor cursor = cursors.remove(cursorId);
+		if (cursor != null && cursor.iterator instanceof Closeable) {
+			try {
+				((Closeable) cursor.iterator).close();
+			} catch (IOException e) {
+				logger.warn("Could not close the iterator of cursor " + cursorId, e);
+			}
+		}
+	}
+	
+	private MethodMetrics getMethodMetrics(RemoteInvocation call) {
+		if (call instanceof CursorInvocation) {
+			return metrics.getMethodMetrics(-1);
+		}
+		if (call instanceof IndexedRemoteInvocation) {
+			return metrics.getMethodMetrics(((IndexedRemoteInvocation) call).getMethodIndex());
+		}
+		try {
+			Method method = getServiceInterface().getMethod(call.getMethodName(), call.getParameterTypes());
+			return metrics.getMethodMetrics(method);
+		} catch (NoSuchMethodException e) {
+			return metrics.getMethodMetrics(-1);
+		}
+	}
+	
+	private ServiceMethodTable getMethodTable() {
+		ServiceMethodTable methodTable = this.methodTable;
+		if (methodTable == null) {
+			if (getServiceInterface() == null) {
+				throw new IllegalStateException("Indexed invocations require the serviceInterface property to be set");
+			}
+			methodTable = new ServiceMethodTable(getServiceInterface());
+			this.methodTable = methodTable;
+		}
+		return methodTable;
+	}
+	
+	private PayloadSizeHints getResultSizeHints() {
+		PayloadSizeHints sizeHints = this.resultSizeHints;
+		if (sizeHints == null) {
+			sizeHints = new PayloadSizeHints(getServiceInterface() != null ? getMethodTable().size() : 0);
+			this.resultSizeHints = sizeHints;
+		}
+		return sizeHints;
+	}
+	
+	private DeepCopier getCopier() {
+		DeepCopier copier = this.copier;
+		if (copier == null) {
+			copier = new DeepCopier(getBeanClassLoader());
+			this.copier = copier;
+		}
+		return copier;
+	}
+	
+	private static class Cursor {
+		final Iterator<?> iterator;
+		final int chunkSize;
+		volatile long lastAccess;
 		
-		request.setAttribute(CrossContextProxyBeanFactory.INVOCATION_RESULT_ATTR, serialize ? serializingConverter.convert(result) : result);
+		Cursor(Iterator<?> iterator, int chunkSize, long lastAccess) {
+			this.iterator = iterator;
+			this.chunkSize = chunkSize;
+			this.lastAccess = lastAccess;
+		}
 	}
 }
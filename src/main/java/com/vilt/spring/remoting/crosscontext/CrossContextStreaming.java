@@ -0,0 +1,44 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a service interface method returning an {@link java.util.Iterator}
+ * whose elements are handed over in chunks, pulled as the caller iterates,
+ * instead of all at once.
+ * 
+ * <p>
+ * The {@link CrossContextServiceExporter} keeps the iterator returned by the
+ * service as a cursor and answers the call with its first chunk. The iterator
+ * returned by the {@link CrossContextProxyBeanFactory} fetches the following
+ * chunks from the cursor, each in a dispatch of its own, so only one chunk is
+ * held at a time on either side. It also implements
+ * {@link java.io.Closeable}, to release the cursor before reaching its end.
+ * 
+ * <p>
+ * Cursors are released once exhausted, when closed, when the request that
+ * opened them completes, if it was bound by the
+ * {@link com.vilt.spring.context.response.RequestAndResponseContextFilter},
+ * or when they're left idle longer than the exporter's cursor timeout. The
+ * service iterator is closed as well if it implements
+ * {@link java.io.Closeable}. Streamed methods aren't cached nor coalesced.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see CrossContextServiceExporter#setCursorTimeout(long)
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface CrossContextStreaming {
+
+	/**
+	 * The number of elements handed over in each chunk.
+	 */
+	int chunkSize() default 100;
+
+}
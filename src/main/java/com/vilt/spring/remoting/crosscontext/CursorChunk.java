@@ -0,0 +1,53 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A chunk of the elements of a cursor opened by the
+ * {@link CrossContextServiceExporter} for a {@link CrossContextStreaming}
+ * method, handed over as the result of the invocation that opened the cursor
+ * or of a {@link CursorInvocation}.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public class CursorChunk implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private String cursorId;
+	private List<Object> elements;
+	private boolean last;
+
+	public CursorChunk() {
+	}
+
+	public CursorChunk(String cursorId, List<Object> elements, boolean last) {
+		this.cursorId = cursorId;
+		this.elements = elements;
+		this.last = last;
+	}
+
+	public String getCursorId() {
+		return cursorId;
+	}
+
+	public List<Object> getElements() {
+		return elements;
+	}
+
+	/**
+	 * Returns whether this is the last chunk of the cursor, which is then
+	 * already released.
+	 */
+	public boolean isLast() {
+		return last;
+	}
+
+	@Override
+	public String toString() {
+		return "CursorChunk: " + elements.size() + " elements of cursor " + cursorId + (last ? " (last)" : "");
+	}
+
+}
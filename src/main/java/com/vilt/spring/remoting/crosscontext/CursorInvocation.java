@@ -0,0 +1,55 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import org.springframework.remoting.support.RemoteInvocation;
+
+/**
+ * {@link RemoteInvocation} fetching the next {@link CursorChunk} of a cursor
+ * opened by the {@link CrossContextServiceExporter} for a
+ * {@link CrossContextStreaming} method, or closing it.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public class CursorInvocation extends RemoteInvocation {
+
+	private static final long serialVersionUID = 1L;
+
+	private String cursorId;
+	private boolean close;
+
+	public CursorInvocation() {
+	}
+
+	public CursorInvocation(String cursorId, boolean close) {
+		this.cursorId = cursorId;
+		this.close = close;
+		setMethodName(close ? "closeCursor" : "fetchCursor");
+		setParameterTypes(new Class<?>[0]);
+		setArguments(new Object[0]);
+	}
+
+	public String getCursorId() {
+		return cursorId;
+	}
+
+	public void setCursorId(String cursorId) {
+		this.cursorId = cursorId;
+	}
+
+	/**
+	 * Returns whether the cursor is to be closed instead of fetched from.
+	 */
+	public boolean isClose() {
+		return close;
+	}
+
+	public void setClose(boolean close) {
+		this.close = close;
+	}
+
+	@Override
+	public String toString() {
+		return "CursorInvocation: " + getMethodName() + " " + cursorId;
+	}
+
+}
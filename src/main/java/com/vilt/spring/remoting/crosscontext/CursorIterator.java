@@ -0,0 +1,73 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator returned by the {@link CrossContextProxyBeanFactory} for
+ * {@link CrossContextStreaming} methods, fetching the chunks of the remote
+ * cursor as they're reached.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+final class CursorIterator implements Iterator<Object>, Closeable {
+
+	private final CrossContextProxyBeanFactory proxyFactory;
+	private final boolean wrap;
+	private CursorChunk chunk;
+	private List<Object> elements;
+	private int position;
+	private boolean closed;
+
+	public CursorIterator(CrossContextProxyBeanFactory proxyFactory, CursorChunk chunk, boolean wrap) {
+		this.proxyFactory = proxyFactory;
+		this.wrap = wrap;
+		this.chunk = chunk;
+		this.elements = chunk.getElements();
+		this.closed = chunk.isLast();
+	}
+
+	public synchronized boolean hasNext() {
+		while (position == elements.size()) {
+			if (chunk.isLast() || closed) {
+				return false;
+			}
+			chunk = proxyFactory.fetchChunk(chunk.getCursorId(), false, wrap);
+			elements = chunk.getElements();
+			position = 0;
+			if (chunk.isLast()) {
+				closed = true;
+			}
+		}
+		return true;
+	}
+
+	public synchronized Object next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Object element = elements.get(position);
+		// let go of the elements already consumed
+		elements.set(position++, null);
+		return element;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("Streamed results can't be modified");
+	}
+
+	/**
+	 * Releases the remote cursor, unless it's exhausted or already closed.
+	 */
+	public synchronized void close() {
+		if (!closed) {
+			closed = true;
+			elements = chunk.getElements().subList(0, position);
+			proxyFactory.fetchChunk(chunk.getCursorId(), true, wrap);
+		}
+	}
+
+}
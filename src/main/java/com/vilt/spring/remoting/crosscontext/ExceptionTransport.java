@@ -0,0 +1,38 @@
+package com.vilt.spring.remoting.crosscontext;
+
+/**
+ * How exceptions declared by the invoked service method are handed over to
+ * the calling context. Undeclared exceptions and errors are always
+ * transported in full.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see CrossContextServiceExporter#setDeclaredExceptionTransport(ExceptionTransport)
+ */
+public enum ExceptionTransport {
+
+	/**
+	 * Exceptions are transported with their stack traces and causes, as
+	 * undeclared ones are. This is the default.
+	 */
+	FULL,
+
+	/**
+	 * Exceptions are transported with their causes but without the stack
+	 * traces of any of them, which are cleared before the exception leaves
+	 * the remote context.
+	 */
+	NO_STACK_TRACE,
+
+	/**
+	 * Exceptions are transported as a record of their class name and message
+	 * and rebuilt by the calling context, through a public constructor taking
+	 * the message or a public no-arg constructor, so they're never
+	 * serialized. The stack trace of the rebuilt exception is the one of the
+	 * calling context, and causes are lost. Exceptions without such
+	 * constructors, or part of a batch, are transported as with
+	 * {@link #NO_STACK_TRACE}.
+	 */
+	COMPACT
+
+}
@@ -0,0 +1,216 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A synthetic request and response pair used to dispatch invocations from
+ * threads that aren't serving an HTTP request, such as scheduled jobs or
+ * message listeners, or made asynchronously on behalf of a request.
+ * 
+ * <p>
+ * The request only holds attributes; it has no parameters, headers, cookies
+ * or session, and its response discards anything written to it. Both are JDK
+ * proxies, so they work with whatever servlet API version the container
+ * provides, and answer other methods with the values the API specifies when
+ * there's nothing to report, or those of a local plain HTTP request. The
+ * output stream of the response is compiled against the minimum servlet API
+ * the library builds with; it's always ready, but doesn't support write
+ * listeners, which blocking includes never use. A new pair is built for each call, since both are cheap and
+ * keeping them on pooled threads would also keep the servlet context, and its
+ * class loader, alive after the context is shut down.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see CrossContextProxyBeanFactory#setAllowHeadless(boolean)
+ */
+final class HeadlessExchange {
+
+	private static final OutputStream DISCARD = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	/**
+	 * Output stream of the response, discarding anything written to it.
+	 */
+	private static final class DiscardingOutputStream extends ServletOutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+
+		/**
+		 * Non-blocking output, as of Servlet 3.1, is always ready.
+		 */
+		public boolean isReady() {
+			return true;
+		}
+	}
+
+	private final ServletContext servletContext;
+	private final Locale locale;
+	private final Map<String, Object> attributes = new HashMap<String, Object>();
+	private final HttpServletRequest request;
+	private final HttpServletResponse response;
+
+	HeadlessExchange(ServletContext servletContext, Locale locale) {
+		this.servletContext = servletContext;
+		this.locale = locale;
+		ClassLoader classLoader = HttpServletRequest.class.getClassLoader();
+		this.request = (HttpServletRequest) Proxy.newProxyInstance(classLoader, new Class<?>[] { HttpServletRequest.class },
+				new RequestHandler());
+		this.response = (HttpServletResponse) Proxy.newProxyInstance(classLoader, new Class<?>[] { HttpServletResponse.class },
+				new ResponseHandler());
+	}
+
+	public HttpServletRequest getRequest() {
+		return request;
+	}
+
+	public HttpServletResponse getResponse() {
+		return response;
+	}
+
+	private static Object defaultValue(Class<?> type) {
+		if (type == boolean.class) {
+			return Boolean.FALSE;
+		} else if (type == int.class) {
+			return Integer.valueOf(0);
+		} else if (type == long.class) {
+			return Long.valueOf(0);
+		} else if (type == Enumeration.class) {
+			return Collections.enumeration(Collections.emptyList());
+		} else if (type == Map.class) {
+			return Collections.emptyMap();
+		} else if (type == Collection.class) {
+			return Collections.emptyList();
+		}
+		return null;
+	}
+
+	private static Object handleObjectMethod(Object proxy, Method method, Object[] args) {
+		String name = method.getName();
+		if (name.equals("equals")) {
+			return Boolean.valueOf(proxy == args[0]);
+		} else if (name.equals("hashCode")) {
+			return Integer.valueOf(System.identityHashCode(proxy));
+		}
+		return "Headless " + proxy.getClass().getInterfaces()[0].getSimpleName();
+	}
+
+	private class RequestHandler implements InvocationHandler {
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			if (method.getDeclaringClass() == Object.class) {
+				return handleObjectMethod(proxy, method, args);
+			}
+			String name = method.getName();
+			if (name.equals("getAttribute")) {
+				return attributes.get(args[0]);
+			} else if (name.equals("setAttribute")) {
+				if (args[1] == null) {
+					attributes.remove(args[0]);
+				} else {
+					attributes.put((String) args[0], args[1]);
+				}
+				return null;
+			} else if (name.equals("removeAttribute")) {
+				attributes.remove(args[0]);
+				return null;
+			} else if (name.equals("getAttributeNames")) {
+				return Collections.enumeration(attributes.keySet());
+			} else if (name.equals("getServletContext")) {
+				return servletContext;
+			} else if (name.equals("getContextPath")) {
+				return servletContext.getContextPath();
+			} else if (name.equals("getMethod")) {
+				return "GET";
+			} else if (name.equals("getProtocol")) {
+				return "HTTP/1.1";
+			} else if (name.equals("getScheme")) {
+				return "http";
+			} else if (name.equals("getServletPath") || name.equals("getRequestURI")) {
+				return "";
+			} else if (name.equals("getLocale")) {
+				return locale;
+			} else if (name.equals("getLocales")) {
+				return Collections.enumeration(Collections.singletonList(locale));
+			} else if (name.equals("getRequestURL")) {
+				return new StringBuffer();
+			} else if (name.equals("getServerName") || name.equals("getLocalName") || name.equals("getRemoteHost")) {
+				return "localhost";
+			} else if (name.equals("getLocalAddr") || name.equals("getRemoteAddr")) {
+				return "127.0.0.1";
+			} else if (name.equals("getServerPort") || name.equals("getLocalPort")) {
+				return Integer.valueOf(80);
+			} else if (name.equals("getContentLength") || name.equals("getIntHeader")) {
+				// unknown length, missing header
+				return Integer.valueOf(-1);
+			} else if (name.equals("getContentLengthLong") || name.equals("getDateHeader")) {
+				return Long.valueOf(-1);
+			} else if (name.equals("getParameterValues") || name.equals("getCookies")) {
+				return null;
+			}
+			return defaultValue(method.getReturnType());
+		}
+	}
+
+	private class ResponseHandler implements InvocationHandler {
+
+		private PrintWriter writer;
+		private ServletOutputStream outputStream;
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			if (method.getDeclaringClass() == Object.class) {
+				return handleObjectMethod(proxy, method, args);
+			}
+			String name = method.getName();
+			if (name.equals("getWriter")) {
+				if (writer == null) {
+					writer = new PrintWriter(DISCARD);
+				}
+				return writer;
+			} else if (name.equals("getOutputStream")) {
+				if (outputStream == null) {
+					outputStream = new DiscardingOutputStream();
+				}
+				return outputStream;
+			} else if (name.startsWith("encode")) {
+				return args[0];
+			} else if (name.equals("getCharacterEncoding")) {
+				return "ISO-8859-1";
+			} else if (name.equals("getLocale")) {
+				return locale;
+			} else if (name.equals("getStatus")) {
+				return Integer.valueOf(HttpServletResponse.SC_OK);
+			} else if (name.equals("getBufferSize")) {
+				return Integer.valueOf(0);
+			}
+			return defaultValue(method.getReturnType());
+		}
+	}
+
+}
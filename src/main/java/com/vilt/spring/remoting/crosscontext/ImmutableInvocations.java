@@ -0,0 +1,127 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+import org.springframework.util.ClassUtils;
+
+import com.vilt.spring.remoting.crosscontext.copy.DeepCopier;
+
+/**
+ * Envelopes for invocations and results made only of immutable JDK values,
+ * such as strings, boxed primitives or big numbers, which can be handed over
+ * by reference even when serialization is enabled.
+ * 
+ * <p>
+ * Envelopes are object arrays tagged with a marker string, holding nothing
+ * but values loaded by the bootstrap class loader, so they're understood by
+ * both sides whatever class loaders each one uses. An invocation envelope
+ * holds the method name, the parameter types (as classes when they're JDK
+ * classes, by name otherwise), the arguments, and, for indexed invocations,
+ * the service fingerprint and method index.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see DeepCopier#isImmutableType(Class)
+ */
+abstract class ImmutableInvocations {
+
+	static final String INVOCATION_MARKER = ImmutableInvocations.class.getName() + ".INVOCATION";
+
+	static final String RESULT_MARKER = ImmutableInvocations.class.getName() + ".RESULT";
+
+	/**
+	 * Returns the envelope of the given invocation, or <code>null</code> if it
+	 * carries anything else than immutable JDK values.
+	 */
+	public static Object[] wrapInvocation(RemoteInvocation invocation) {
+		Class<?> invocationClass = invocation.getClass();
+		if ((invocationClass != RemoteInvocation.class && invocationClass != IndexedRemoteInvocation.class) || invocation.getAttributes() != null) {
+			return null;
+		}
+		Object[] arguments = invocation.getArguments();
+		for (Object argument : arguments) {
+			if (!isImmutable(argument)) {
+				return null;
+			}
+		}
+
+		if (invocation instanceof IndexedRemoteInvocation) {
+			IndexedRemoteInvocation indexed = (IndexedRemoteInvocation) invocation;
+			return new Object[] { INVOCATION_MARKER, null, null, arguments, indexed.getFingerprint(), Integer.valueOf(indexed.getMethodIndex()) };
+		}
+
+		Class<?>[] parameterTypes = invocation.getParameterTypes();
+		Object types = parameterTypes;
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (parameterTypes[i].getClassLoader() != null) {
+				String[] typeNames = new String[parameterTypes.length];
+				for (int j = 0; j < typeNames.length; j++) {
+					typeNames[j] = parameterTypes[j].getName();
+				}
+				types = typeNames;
+				break;
+			}
+		}
+		return new Object[] { INVOCATION_MARKER, invocation.getMethodName(), types, arguments, null, null };
+	}
+
+	public static boolean isInvocation(Object value) {
+		return value instanceof Object[] && ((Object[]) value).length == 6 && INVOCATION_MARKER.equals(((Object[]) value)[0]);
+	}
+
+	/**
+	 * Rebuilds the invocation held by an envelope, resolving parameter types
+	 * given by name with the given class loader.
+	 */
+	public static RemoteInvocation unwrapInvocation(Object value, ClassLoader classLoader) throws ClassNotFoundException {
+		Object[] envelope = (Object[]) value;
+		Object[] arguments = (Object[]) envelope[3];
+		if (envelope[4] != null) {
+			return new IndexedRemoteInvocation((String) envelope[4], ((Integer) envelope[5]).intValue(), arguments);
+		}
+
+		Class<?>[] parameterTypes;
+		if (envelope[2] instanceof String[]) {
+			String[] typeNames = (String[]) envelope[2];
+			parameterTypes = new Class<?>[typeNames.length];
+			for (int i = 0; i < typeNames.length; i++) {
+				parameterTypes[i] = ClassUtils.forName(typeNames[i], classLoader);
+			}
+		} else {
+			parameterTypes = (Class<?>[]) envelope[2];
+		}
+		return new RemoteInvocation((String) envelope[1], parameterTypes, arguments);
+	}
+
+	/**
+	 * Returns the envelope of the given result, or <code>null</code> if it's
+	 * an exception or anything else than an immutable JDK value.
+	 */
+	public static Object[] wrapResult(Object result) {
+		if (!(result instanceof RemoteInvocationResult)) {
+			return null;
+		}
+		RemoteInvocationResult invocationResult = (RemoteInvocationResult) result;
+		if (invocationResult.hasException() || !isImmutable(invocationResult.getValue())) {
+			return null;
+		}
+		return new Object[] { RESULT_MARKER, invocationResult.getValue() };
+	}
+
+	public static boolean isResult(Object value) {
+		return value instanceof Object[] && ((Object[]) value).length == 2 && RESULT_MARKER.equals(((Object[]) value)[0]);
+	}
+
+	public static RemoteInvocationResult unwrapResult(Object value) {
+		return new RemoteInvocationResult(((Object[]) value)[1]);
+	}
+
+	private static boolean isImmutable(Object value) {
+		if (value == null) {
+			return true;
+		}
+		Class<?> type = value.getClass();
+		return type.getClassLoader() == null && DeepCopier.isImmutableType(type);
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import org.springframework.remoting.support.RemoteInvocation;
+
+/**
+ * Compact {@link RemoteInvocation} that identifies the invoked method by its
+ * index in the {@link ServiceMethodTable} of the service interface, instead of
+ * its name and parameter types. The fingerprint of the table is sent along, so
+ * that the exporter can reject invocations made against a different version of
+ * the interface.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see CrossContextProxyBeanFactory#setUseMethodIndex(boolean)
+ */
+public class IndexedRemoteInvocation extends RemoteInvocation {
+
+	private static final long serialVersionUID = 1L;
+
+	private String fingerprint;
+	private int methodIndex;
+
+	public IndexedRemoteInvocation() {
+	}
+
+	public IndexedRemoteInvocation(String fingerprint, int methodIndex, Object[] arguments) {
+		this.fingerprint = fingerprint;
+		this.methodIndex = methodIndex;
+		setArguments(arguments);
+	}
+
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	public void setFingerprint(String fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+
+	public int getMethodIndex() {
+		return methodIndex;
+	}
+
+	public void setMethodIndex(int methodIndex) {
+		this.methodIndex = methodIndex;
+	}
+
+	@Override
+	public String toString() {
+		return "IndexedRemoteInvocation: method index " + methodIndex + " of interface " + fingerprint;
+	}
+
+}
@@ -0,0 +1,133 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import static com.vilt.spring.remoting.crosscontext.CrossContextProxyBeanFactory.INVOCATION_ATTR;
+import static com.vilt.spring.remoting.crosscontext.CrossContextProxyBeanFactory.INVOCATION_CODEC_ATTR;
+import static com.vilt.spring.remoting.crosscontext.CrossContextProxyBeanFactory.INVOCATION_RESULT_ATTR;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * Request wrapper used to dispatch an invocation without touching the
+ * attributes of the calling request.
+ * 
+ * <p>
+ * Attributes of the wrapped request are hidden, except the container ones
+ * (<code>java.</code>, <code>javax.</code> and <code>sun.</code> prefixed).
+ * Attributes set during the dispatch are kept by the wrapper itself, and the
+ * invocation, its codec and its result are held in private slots. Those slots
+ * are not listed by {@link #getAttributeNames()}, so they also survive a
+ * DispatcherServlet that cleans up attributes after includes.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see CrossContextProxyBeanFactory#setWrapRequest(boolean)
+ */
+class InvocationRequestWrapper extends HttpServletRequestWrapper {
+
+	private static final Object REMOVED = new Object();
+
+	private final Object invocation;
+	private final Object codecName;
+	private Object result;
+	private Map<String, Object> attributes;
+
+	public InvocationRequestWrapper(HttpServletRequest request, Object codecName, Object invocation) {
+		super(request);
+		this.codecName = codecName;
+		this.invocation = invocation;
+	}
+
+	/**
+	 * Returns the invocation result set by the exporter, if any.
+	 */
+	public Object getResult() {
+		return result;
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		if (INVOCATION_ATTR.equals(name)) {
+			return invocation;
+		}
+		if (INVOCATION_RESULT_ATTR.equals(name)) {
+			return result;
+		}
+		if (INVOCATION_CODEC_ATTR.equals(name)) {
+			return codecName;
+		}
+		if (attributes != null) {
+			Object value = attributes.get(name);
+			if (value != null) {
+				return value != REMOVED ? value : null;
+			}
+		}
+		return isContainerAttribute(name) ? super.getAttribute(name) : null;
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		List<String> names = new ArrayList<String>();
+		for (Enumeration<?> wrappedNames = super.getAttributeNames(); wrappedNames.hasMoreElements();) {
+			String name = (String) wrappedNames.nextElement();
+			if (isContainerAttribute(name) && (attributes == null || !attributes.containsKey(name))) {
+				names.add(name);
+			}
+		}
+		if (attributes != null) {
+			for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+				if (entry.getValue() != REMOVED) {
+					names.add(entry.getKey());
+				}
+			}
+		}
+		return Collections.enumeration(names);
+	}
+
+	@Override
+	public void setAttribute(String name, Object value) {
+		if (value == null) {
+			removeAttribute(name);
+			return;
+		}
+		if (INVOCATION_RESULT_ATTR.equals(name)) {
+			result = value;
+			return;
+		}
+		if (attributes == null) {
+			attributes = new HashMap<String, Object>();
+		}
+		attributes.put(name, value);
+	}
+
+	@Override
+	public void removeAttribute(String name) {
+		if (INVOCATION_RESULT_ATTR.equals(name) || INVOCATION_ATTR.equals(name) || INVOCATION_CODEC_ATTR.equals(name)) {
+			// private slots, see class javadoc
+			return;
+		}
+		if (attributes == null) {
+			if (!isContainerAttribute(name)) {
+				return;
+			}
+			attributes = new HashMap<String, Object>();
+		}
+		if (isContainerAttribute(name)) {
+			attributes.put(name, REMOVED);
+		} else {
+			attributes.remove(name);
+		}
+	}
+
+	static boolean isContainerAttribute(String name) {
+		return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.");
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.util.DigestUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Immutable table of the methods of a service interface, sorted by signature
+ * so that both sides of a cross context call, each with its own copy of the
+ * interface, assign the same index to each method.
+ * 
+ * <p>
+ * The table also computes a fingerprint of all the signatures, so that
+ * invocations made against a different version of the interface can be
+ * detected.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see IndexedRemoteInvocation
+ */
+public class ServiceMethodTable {
+
+	private final Class<?> serviceInterface;
+	private final Method[] methods;
+	private final String[] signatures;
+	private final Map<Method, Integer> indexes;
+	private final String fingerprint;
+
+	public ServiceMethodTable(Class<?> serviceInterface) {
+		this.serviceInterface = serviceInterface;
+
+		Method[] methods = serviceInterface.getMethods();
+		Arrays.sort(methods, new Comparator<Method>() {
+			public int compare(Method method1, Method method2) {
+				int result = getSignature(method1).compareTo(getSignature(method2));
+				return result != 0 ? result : method1.getDeclaringClass().getName().compareTo(method2.getDeclaringClass().getName());
+			}
+		});
+
+		this.methods = methods;
+		this.signatures = new String[methods.length];
+		this.indexes = new HashMap<Method, Integer>(methods.length * 2);
+		StringBuilder allSignatures = new StringBuilder();
+		for (int i = 0; i < methods.length; i++) {
+			ReflectionUtils.makeAccessible(methods[i]);
+			signatures[i] = getSignature(methods[i]);
+			indexes.put(methods[i], i);
+			allSignatures.append(signatures[i]).append(';');
+		}
+		this.fingerprint = DigestUtils.md5DigestAsHex(allSignatures.toString().getBytes());
+	}
+
+	public Class<?> getServiceInterface() {
+		return serviceInterface;
+	}
+
+	/**
+	 * Returns a hash of the signatures of all the methods in the table.
+	 */
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	public int size() {
+		return methods.length;
+	}
+
+	/**
+	 * Returns the method with the given index, already made accessible.
+	 */
+	public Method getMethod(int index) {
+		return methods[index];
+	}
+
+	/**
+	 * Returns the signature of the method with the given index.
+	 */
+	public String getSignature(int index) {
+		return signatures[index];
+	}
+
+	/**
+	 * Returns the index of the given method, or <code>-1</code> if it doesn't
+	 * belong to the service interface.
+	 */
+	public int indexOf(Method method) {
+		Integer index = indexes.get(method);
+		return index != null ? index.intValue() : -1;
+	}
+
+	private static String getSignature(Method method) {
+		StringBuilder signature = new StringBuilder();
+		signature.append(method.getReturnType().getName()).append(' ').append(method.getName()).append('(');
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (i > 0) {
+				signature.append(',');
+			}
+			signature.append(parameterTypes[i].getName());
+		}
+		return signature.append(')').toString();
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.vilt.spring.remoting.crosscontext;
+
+/**
+ * How invocations and their results are handed over between the calling and
+ * the remote servlet contexts.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see CrossContextProxyBeanFactory#setTransferMode(TransferMode)
+ * @see CrossContextServiceExporter#setTransferMode(TransferMode)
+ */
+public enum TransferMode {
+
+	/**
+	 * Invocations and results are serialized into bytes with the configured
+	 * {@link com.vilt.spring.remoting.crosscontext.codec.CrossContextCodec}.
+	 * Safe across webapp class loaders. This is the default.
+	 */
+	SERIALIZE,
+
+	/**
+	 * Invocations and results are passed by reference. Only safe when all the
+	 * exchanged classes, including Spring's, are loaded by a class loader
+	 * shared by both contexts.
+	 */
+	REFERENCE,
+
+	/**
+	 * Invocations and results are deep copied in memory, each object being
+	 * rebuilt with the class resolved by the receiving context's class loader.
+	 * Safe across webapp class loaders, without the intermediate byte
+	 * buffers.
+	 * 
+	 * @see com.vilt.spring.remoting.crosscontext.copy.DeepCopier
+	 */
+	COPY,
+
+	/**
+	 * Invocations and results are passed by reference when all the classes of
+	 * their objects are resolved to the very same classes by the receiving
+	 * context's class loader, as with classes of a jar shared by both
+	 * contexts, and deep copied otherwise. Whether each class is shared is
+	 * found out once and cached.
+	 * 
+	 * <p>
+	 * As with {@link #REFERENCE}, shared graphs are seen by both contexts, so
+	 * changes made by one of them are visible to the other.
+	 * 
+	 * @see com.vilt.spring.remoting.crosscontext.copy.DeepCopier#share(Object)
+	 */
+	AUTO
+
+}
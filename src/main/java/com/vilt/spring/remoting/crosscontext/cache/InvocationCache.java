@@ -0,0 +1,144 @@
+package com.vilt.spring.remoting.crosscontext.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded cache of the results of one service method, with a time to
+ * live.
+ * 
+ * <p>
+ * Entries are spread over a few segments, each one a {@link LinkedHashMap} in
+ * access order guarded by its own lock, so that concurrent callers rarely
+ * contend and each segment evicts its least recently used entries. Expired
+ * entries are dropped when they're looked up.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public class InvocationCache {
+
+	private static final int SEGMENTS = 8;
+
+	private final Segment[] segments;
+	private final long timeToLive;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxSize
+	 *            maximum number of entries
+	 * @param timeToLive
+	 *            milliseconds an entry is kept, or zero or less to keep it
+	 *            until evicted
+	 */
+	public InvocationCache(int maxSize, long timeToLive) {
+		int segmentCount = Math.max(1, Math.min(SEGMENTS, maxSize / SEGMENTS));
+		this.segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment(Math.max(1, maxSize / segmentCount));
+		}
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Returns the cached value for the key, or <code>null</code> if there's no
+	 * entry or it expired.
+	 */
+	public Object get(InvocationKey key) {
+		Segment segment = segmentFor(key);
+		Entry entry;
+		synchronized (segment) {
+			entry = segment.get(key);
+			if (entry != null && entry.expiresAt != 0 && entry.expiresAt <= System.currentTimeMillis()) {
+				segment.remove(key);
+				entry = null;
+			}
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.value;
+	}
+
+	public void put(InvocationKey key, Object value) {
+		Entry entry = new Entry(value, timeToLive > 0 ? System.currentTimeMillis() + timeToLive : 0);
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.put(key, entry);
+		}
+	}
+
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	private Segment segmentFor(InvocationKey key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return segments[(hash & 0x7fffffff) % segments.length];
+	}
+
+	private static final class Entry {
+		final Object value;
+		final long expiresAt;
+
+		Entry(Object value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final class Segment extends LinkedHashMap<InvocationKey, Entry> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int maxSize;
+
+		Segment(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<InvocationKey, Entry> eldest) {
+			if (size() > maxSize) {
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+
+}
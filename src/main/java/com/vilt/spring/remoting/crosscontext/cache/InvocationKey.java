@@ -0,0 +1,53 @@
+package com.vilt.spring.remoting.crosscontext.cache;
+
+import java.util.Arrays;
+
+/**
+ * Key of a cached invocation: the index of the method in the service method
+ * table and its arguments, compared by value, or their encoded form.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public final class InvocationKey {
+
+	private final int methodIndex;
+	private final Object[] arguments;
+	private final int hashCode;
+
+	/**
+	 * Creates a key comparing the given arguments with
+	 * {@link Arrays#deepEquals(Object[], Object[])}. Neither the array nor the
+	 * arguments it holds may be changed afterwards.
+	 */
+	public InvocationKey(int methodIndex, Object[] arguments) {
+		this.methodIndex = methodIndex;
+		this.arguments = arguments;
+		this.hashCode = 31 * methodIndex + Arrays.deepHashCode(arguments);
+	}
+
+	/**
+	 * Creates a key comparing the encoded form of the arguments.
+	 */
+	public InvocationKey(int methodIndex, byte[] encodedArguments) {
+		this(methodIndex, new Object[] { encodedArguments });
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof InvocationKey)) {
+			return false;
+		}
+		InvocationKey other = (InvocationKey) obj;
+		return methodIndex == other.methodIndex && hashCode == other.hashCode && Arrays.deepEquals(arguments, other.arguments);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+}
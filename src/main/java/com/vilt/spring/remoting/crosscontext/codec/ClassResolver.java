@@ -0,0 +1,150 @@
+package com.vilt.spring.remoting.crosscontext.codec;
+
+import java.io.InvalidClassException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.util.ClassUtils;
+
+/**
+ * Resolves the classes named in serialized payloads, caching them per class
+ * loader and class name.
+ * 
+ * <p>
+ * Webapp class loaders typically look classes up under a lock, which becomes
+ * a contention point when many threads decode payloads at once, so each class
+ * is resolved through the class loader just once. The cache holds on to the
+ * class loaders it has seen, so it must be cleared for a class loader when
+ * its context shuts down.
+ * 
+ * <p>
+ * An allow-list of class names may be set to limit which classes can be
+ * deserialized. Entries are either class names or package names followed by
+ * <code>.*</code>, matching the classes of the package and its subpackages.
+ * Classes of the <code>java.lang</code> package, the invocation classes
+ * themselves, including those of cursors and the list holding the elements
+ * of a chunk, the JDK classes a result carries along with an exception, and
+ * primitive types are always allowed; arrays are allowed when their component
+ * type is. Changing the allow-list discards the resolved classes, as well as
+ * the descriptors cached by codecs using this resolver.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see JdkSerializationCodec#setClassResolver(ClassResolver)
+ * @see CompactSerializationCodec#setClassResolver(ClassResolver)
+ */
+public class ClassResolver {
+
+	private static final String[] ALWAYS_ALLOWED = { "org.springframework.remoting.support.RemoteInvocation",
+			"org.springframework.remoting.support.RemoteInvocationResult", "com.vilt.spring.remoting.crosscontext.IndexedRemoteInvocation",
+			"com.vilt.spring.remoting.crosscontext.CursorInvocation", "com.vilt.spring.remoting.crosscontext.CursorChunk", "java.util.ArrayList",
+			// exceptions thrown by the service and their suppressed exceptions
+			"java.lang.reflect.InvocationTargetException", "java.lang.reflect.UndeclaredThrowableException",
+			"java.util.Collections$UnmodifiableRandomAccessList", "java.util.Collections$UnmodifiableList",
+			"java.util.Collections$UnmodifiableCollection", "java.util.Collections$EmptyList" };
+
+	private final Map<ClassLoader, Map<String, Class<?>>> classCache = new ConcurrentHashMap<ClassLoader, Map<String, Class<?>>>();
+
+	private volatile String[] allowedClasses;
+
+	private volatile int generation;
+
+	/**
+	 * Set the names of the classes that may be resolved, or package names
+	 * followed by <code>.*</code>. Default is to allow any class.
+	 */
+	public synchronized void setAllowedClasses(String[] allowedClasses) {
+		this.allowedClasses = allowedClasses != null ? allowedClasses.clone() : null;
+		classCache.clear();
+		generation++;
+	}
+
+	public String[] getAllowedClasses() {
+		return allowedClasses != null ? allowedClasses.clone() : null;
+	}
+
+	/**
+	 * Returns a number that changes whenever the allow-list does, so that
+	 * whatever was resolved before can be discarded.
+	 */
+	int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Returns the class of the given name, as resolved by the given class
+	 * loader, or the default class loader if <code>null</code>.
+	 * 
+	 * @throws InvalidClassException if the class isn't allowed
+	 */
+	public Class<?> resolve(String className, ClassLoader classLoader) throws ClassNotFoundException, InvalidClassException {
+		ClassLoader key = classLoader != null ? classLoader : ClassUtils.getDefaultClassLoader();
+		Map<String, Class<?>> classes = classCache.get(key);
+		if (classes == null) {
+			classes = new ConcurrentHashMap<String, Class<?>>();
+			classCache.put(key, classes);
+		}
+		Class<?> clazz = classes.get(className);
+		if (clazz == null) {
+			if (!isAllowed(className)) {
+				throw new InvalidClassException(className, "Class is not allowed to be deserialized");
+			}
+			clazz = ClassUtils.forName(className, key);
+			classes.put(className, clazz);
+		}
+		return clazz;
+	}
+
+	/**
+	 * Discards the classes resolved by the given class loader, or the default
+	 * class loader if <code>null</code>.
+	 */
+	public void clear(ClassLoader classLoader) {
+		classCache.remove(classLoader != null ? classLoader : ClassUtils.getDefaultClassLoader());
+	}
+
+	/**
+	 * Discards all the resolved classes.
+	 */
+	public void clear() {
+		classCache.clear();
+	}
+
+	/**
+	 * Returns whether the class of the given name, in the format returned by
+	 * {@link Class#getName()}, may be resolved.
+	 */
+	public boolean isAllowed(String className) {
+		String[] allowedClasses = this.allowedClasses;
+		if (allowedClasses == null) {
+			return true;
+		}
+
+		String name = className;
+		if (name.startsWith("[")) {
+			int dimensions = name.lastIndexOf('[') + 1;
+			if (name.charAt(dimensions) != 'L') {
+				return true;
+			}
+			name = name.substring(dimensions + 1, name.length() - 1);
+		}
+		if (ClassUtils.resolvePrimitiveClassName(name) != null) {
+			return true;
+		}
+		if (name.startsWith("java.lang.") && name.indexOf('.', "java.lang.".length()) == -1) {
+			return true;
+		}
+		for (String allowed : ALWAYS_ALLOWED) {
+			if (name.equals(allowed)) {
+				return true;
+			}
+		}
+		for (String allowed : allowedClasses) {
+			if (allowed.endsWith(".*") ? name.startsWith(allowed.substring(0, allowed.length() - 1)) : name.equals(allowed)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,106 @@
+package com.vilt.spring.remoting.crosscontext.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.springframework.core.serializer.support.SerializationFailedException;
+
+/**
+ * Convenience methods to encode and decode objects into byte arrays, or
+ * {@link ByteBuffer} views of pooled {@link EncodingBuffer}s, with a
+ * {@link CrossContextCodec}, reporting failures the same way Spring's
+ * serializing converters do.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public abstract class CodecUtils {
+
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
+	public static byte[] encode(CrossContextCodec codec, Object object) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+		try {
+			codec.encode(object, outputStream);
+		} catch (Throwable e) {
+			throw new SerializationFailedException("Failed to serialize object using " + codec.getName() + " codec", e);
+		}
+		return outputStream.toByteArray();
+	}
+
+	public static void encode(CrossContextCodec codec, Object object, OutputStream outputStream) {
+		try {
+			codec.encode(object, outputStream);
+		} catch (Throwable e) {
+			throw new SerializationFailedException("Failed to serialize object using " + codec.getName() + " codec", e);
+		}
+	}
+
+	/**
+	 * Decodes a payload, either a byte array or a {@link ByteBuffer}.
+	 */
+	public static Object decodePayload(CrossContextCodec codec, Object payload, ClassLoader classLoader) {
+		if (payload instanceof ByteBuffer) {
+			return decode(codec, (ByteBuffer) payload, classLoader);
+		}
+		return decode(codec, (byte[]) payload, classLoader);
+	}
+
+	public static Object decode(CrossContextCodec codec, ByteBuffer data, ClassLoader classLoader) {
+		ByteArrayInputStream inputStream;
+		if (data.hasArray()) {
+			inputStream = new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.remaining());
+		} else {
+			byte[] copy = new byte[data.remaining()];
+			data.duplicate().get(copy);
+			inputStream = new ByteArrayInputStream(copy);
+		}
+		try {
+			return codec.decode(inputStream, classLoader);
+		} catch (Throwable e) {
+			throw new SerializationFailedException("Failed to deserialize payload using " + codec.getName() + " codec", e);
+		}
+	}
+
+	/**
+	 * Returns whether the given value is an encoded payload, either a byte
+	 * array or a {@link ByteBuffer}.
+	 */
+	public static boolean isPayload(Object value) {
+		return value instanceof byte[] || value instanceof ByteBuffer;
+	}
+
+	/**
+	 * Returns the size in bytes of an encoded payload.
+	 */
+	public static int sizeOf(Object payload) {
+		if (payload instanceof ByteBuffer) {
+			return ((ByteBuffer) payload).remaining();
+		}
+		return ((byte[]) payload).length;
+	}
+
+	/**
+	 * Discards what the given codec cached for the given class loader, so that
+	 * it can be garbage collected once its context shuts down. Only the codecs
+	 * of this package cache anything.
+	 */
+	public static void clearCache(CrossContextCodec codec, ClassLoader classLoader) {
+		if (codec instanceof JdkSerializationCodec) {
+			((JdkSerializationCodec) codec).getClassResolver().clear(classLoader);
+		} else if (codec instanceof CompactSerializationCodec) {
+			((CompactSerializationCodec) codec).clearCache(classLoader);
+		}
+	}
+
+	public static Object decode(CrossContextCodec codec, byte[] data, ClassLoader classLoader) {
+		try {
+			return codec.decode(new ByteArrayInputStream(data), classLoader);
+		} catch (Throwable e) {
+			throw new SerializationFailedException("Failed to deserialize payload using " + codec.getName() + " codec", e);
+		}
+	}
+
+}
@@ -0,0 +1,184 @@
+package com.vilt.spring.remoting.crosscontext.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.util.ClassUtils;
+
+/**
+ * {@link CrossContextCodec} based on Java serialization that, instead of full
+ * class descriptors, only writes class names.
+ * 
+ * <p>
+ * Since both sides of a cross context call live in the same JVM, the class
+ * descriptors can be looked up locally when reading, and are cached per class
+ * loader so that each class is resolved just once. This produces considerably
+ * smaller payloads and avoids building and parsing the descriptors on every
+ * call. Both sides must have compatible versions of the exchanged classes,
+ * since serial version UIDs and field layouts are no longer compared.
+ * 
+ * <p>
+ * Classes are resolved through a {@link ClassResolver}, which may restrict
+ * them to an allow-list.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public class CompactSerializationCodec implements CrossContextCodec {
+
+	public static final String NAME = "compact";
+
+	private static final int STREAM_VERSION = 1;
+	private static final int FAT_DESCRIPTOR = 0;
+	private static final int THIN_DESCRIPTOR = 1;
+
+	private volatile Map<ClassLoader, Map<String, ObjectStreamClass>> descriptorCache = new ConcurrentHashMap<ClassLoader, Map<String, ObjectStreamClass>>();
+
+	private volatile int resolverGeneration;
+
+	private volatile ClassResolver classResolver = new ClassResolver();
+
+	public String getName() {
+		return NAME;
+	}
+
+	public void encode(Object object, OutputStream outputStream) throws IOException {
+		ObjectOutputStream objectOutputStream = new CompactObjectOutputStream(outputStream);
+		objectOutputStream.writeObject(object);
+		objectOutputStream.flush();
+	}
+
+	public Object decode(InputStream inputStream, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+		ObjectInputStream objectInputStream = new CompactObjectInputStream(inputStream, classLoader);
+		return objectInputStream.readObject();
+	}
+
+	/**
+	 * Set the resolver of the classes of decoded objects, which may be shared
+	 * with other codecs.
+	 */
+	public void setClassResolver(ClassResolver classResolver) {
+		this.classResolver = classResolver;
+		descriptorCache.clear();
+	}
+
+	public ClassResolver getClassResolver() {
+		return classResolver;
+	}
+
+	/**
+	 * Discards all the cached class descriptors.
+	 */
+	public void clearCache() {
+		descriptorCache.clear();
+		classResolver.clear();
+	}
+
+	/**
+	 * Discards the class descriptors cached for the given class loader, or the
+	 * default class loader if <code>null</code>.
+	 */
+	public void clearCache(ClassLoader classLoader) {
+		descriptorCache.remove(classLoader != null ? classLoader : ClassUtils.getDefaultClassLoader());
+		classResolver.clear(classLoader);
+	}
+
+	private ObjectStreamClass lookupDescriptor(String className, ClassLoader classLoader) throws ClassNotFoundException, InvalidClassException {
+		ClassLoader key = classLoader != null ? classLoader : ClassUtils.getDefaultClassLoader();
+		ClassResolver classResolver = this.classResolver;
+		int generation = classResolver.getGeneration();
+		if (generation != resolverGeneration) {
+			// descriptors resolved under another allow-list
+			descriptorCache = new ConcurrentHashMap<ClassLoader, Map<String, ObjectStreamClass>>();
+			resolverGeneration = generation;
+		}
+		Map<ClassLoader, Map<String, ObjectStreamClass>> descriptorCache = this.descriptorCache;
+		Map<String, ObjectStreamClass> descriptors = descriptorCache.get(key);
+		if (descriptors == null) {
+			descriptors = new ConcurrentHashMap<String, ObjectStreamClass>();
+			descriptorCache.put(key, descriptors);
+		}
+		ObjectStreamClass descriptor = descriptors.get(className);
+		if (descriptor == null) {
+			descriptor = ObjectStreamClass.lookup(classResolver.resolve(className, key));
+			if (descriptor == null) {
+				throw new InvalidClassException(className, "Class is not serializable");
+			}
+			descriptors.put(className, descriptor);
+		}
+		return descriptor;
+	}
+
+	private static class CompactObjectOutputStream extends ObjectOutputStream {
+
+		public CompactObjectOutputStream(OutputStream out) throws IOException {
+			super(out);
+		}
+
+		@Override
+		protected void writeStreamHeader() throws IOException {
+			writeByte(STREAM_VERSION);
+		}
+
+		@Override
+		protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+			Class<?> clazz = desc.forClass();
+			if (clazz.isPrimitive() || clazz.isArray() || clazz.isInterface() || desc.getSerialVersionUID() == 0) {
+				write(FAT_DESCRIPTOR);
+				super.writeClassDescriptor(desc);
+			} else {
+				write(THIN_DESCRIPTOR);
+				writeUTF(desc.getName());
+			}
+		}
+	}
+
+	private class CompactObjectInputStream extends ObjectInputStream {
+
+		private final ClassLoader classLoader;
+
+		public CompactObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+			super(in);
+			this.classLoader = classLoader;
+		}
+
+		@Override
+		protected void readStreamHeader() throws IOException {
+			int version = readByte() & 0xFF;
+			if (version != STREAM_VERSION) {
+				throw new StreamCorruptedException("Unsupported version: " + version);
+			}
+		}
+
+		@Override
+		protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+			int type = read();
+			switch (type) {
+			case FAT_DESCRIPTOR:
+				return super.readClassDescriptor();
+			case THIN_DESCRIPTOR:
+				return lookupDescriptor(readUTF(), classLoader);
+			default:
+				throw new StreamCorruptedException("Unexpected class descriptor type: " + type);
+			}
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			Class<?> clazz = desc.forClass();
+			if (clazz != null) {
+				return clazz;
+			}
+			return classResolver.resolve(desc.getName(), classLoader);
+		}
+	}
+
+}
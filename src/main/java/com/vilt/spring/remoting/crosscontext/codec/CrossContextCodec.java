@@ -0,0 +1,41 @@
+package com.vilt.spring.remoting.crosscontext.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Strategy used by {@link com.vilt.spring.remoting.crosscontext.CrossContextProxyBeanFactory}
+ * and {@link com.vilt.spring.remoting.crosscontext.CrossContextServiceExporter}
+ * to turn invocations and their results into bytes, and back, when
+ * <code>serialize</code> is enabled.
+ * 
+ * <p>
+ * Both sides of a cross context call must use codecs with the same
+ * {@link #getName() name}; the exporter rejects invocations encoded by a
+ * different codec.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ * @see JdkSerializationCodec
+ * @see CompactSerializationCodec
+ */
+public interface CrossContextCodec {
+
+	/**
+	 * Returns the name identifying the wire format produced by this codec.
+	 */
+	String getName();
+
+	/**
+	 * Writes the given object to the output stream.
+	 */
+	void encode(Object object, OutputStream outputStream) throws IOException;
+
+	/**
+	 * Reads an object from the input stream, resolving classes through the
+	 * given class loader.
+	 */
+	Object decode(InputStream inputStream, ClassLoader classLoader) throws IOException, ClassNotFoundException;
+
+}
@@ -0,0 +1,110 @@
+package com.vilt.spring.remoting.crosscontext.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ByteArrayOutputStream} whose backing arrays are pooled per thread
+ * and whose content can be handed over as a {@link ByteBuffer} view, without
+ * the copy made by {@link #toByteArray()}.
+ * 
+ * <p>
+ * Buffers are leased with {@link #lease(int)} and must be given back with
+ * {@link #release()} once the view is no longer needed. Each thread keeps a
+ * few arrays so that nested cross context calls don't share them. Arrays
+ * that grew beyond {@link #MAX_RETAINED_CAPACITY} aren't kept, so that an
+ * occasional huge payload doesn't stay pinned to the thread.
+ * 
+ * <p>
+ * The pool of a thread only holds byte arrays, so it never keeps the class
+ * loader of a context alive, and is softly referenced, so the arrays of
+ * threads that stop making calls are eventually reclaimed. It can also be
+ * dropped with {@link #clearPool()}.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public final class EncodingBuffer extends ByteArrayOutputStream {
+
+	public static final int INITIAL_CAPACITY = 1024;
+
+	public static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+	private static final int BUFFERS_PER_THREAD = 4;
+
+	private static final byte[] RELEASED = new byte[0];
+
+	private static final ThreadLocal<SoftReference<byte[][]>> POOL = new ThreadLocal<SoftReference<byte[][]>>();
+
+	private EncodingBuffer(byte[] buf) {
+		super(0);
+		this.buf = buf;
+	}
+
+	/**
+	 * Leases an empty buffer of the current thread, with room for at least
+	 * <code>sizeHint</code> bytes. When all the arrays of the thread are in
+	 * use, a new one that is pooled once released is used.
+	 */
+	public static EncodingBuffer lease(int sizeHint) {
+		byte[][] arrays = getPool();
+		byte[] array = null;
+		for (int i = 0; i < arrays.length; i++) {
+			if (arrays[i] != null) {
+				array = arrays[i];
+				arrays[i] = null;
+				break;
+			}
+		}
+		if (array == null || array.length < sizeHint) {
+			array = new byte[Math.max(sizeHint, INITIAL_CAPACITY)];
+		}
+		return new EncodingBuffer(array);
+	}
+
+	/**
+	 * Gives the backing array back to the pool of the current thread. Any view
+	 * previously returned by {@link #view()} must not be used afterwards.
+	 */
+	public void release() {
+		byte[] array = buf;
+		buf = RELEASED;
+		count = 0;
+		if (array == RELEASED || array.length > MAX_RETAINED_CAPACITY) {
+			return;
+		}
+		byte[][] arrays = getPool();
+		for (int i = 0; i < arrays.length; i++) {
+			if (arrays[i] == null) {
+				arrays[i] = array;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns a view of the bytes written so far, backed by this buffer.
+	 */
+	public ByteBuffer view() {
+		return ByteBuffer.wrap(buf, 0, count);
+	}
+
+	/**
+	 * Drops the arrays pooled by the current thread.
+	 */
+	public static void clearPool() {
+		POOL.remove();
+	}
+
+	private static byte[][] getPool() {
+		SoftReference<byte[][]> reference = POOL.get();
+		byte[][] arrays = reference != null ? reference.get() : null;
+		if (arrays == null) {
+			arrays = new byte[BUFFERS_PER_THREAD][];
+			POOL.set(new SoftReference<byte[][]>(arrays));
+		}
+		return arrays;
+	}
+
+}
@@ -0,0 +1,79 @@
+package com.vilt.spring.remoting.crosscontext.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+
+import org.springframework.core.ConfigurableObjectInputStream;
+
+/**
+ * {@link CrossContextCodec} based on plain Java serialization. This is the
+ * default codec.
+ * 
+ * <p>
+ * Classes are resolved through a {@link ClassResolver}, which caches them and
+ * may restrict them to an allow-list.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public class JdkSerializationCodec implements CrossContextCodec {
+
+	public static final String NAME = "jdk";
+
+	private ClassResolver classResolver = new ClassResolver();
+
+	public String getName() {
+		return NAME;
+	}
+
+	public void encode(Object object, OutputStream outputStream) throws IOException {
+		ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream);
+		objectOutputStream.writeObject(object);
+		objectOutputStream.flush();
+	}
+
+	public Object decode(InputStream inputStream, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+		ObjectInputStream objectInputStream = new ResolvingObjectInputStream(inputStream, classLoader);
+		return objectInputStream.readObject();
+	}
+
+	/**
+	 * Set the resolver of the classes of decoded objects, which may be shared
+	 * with other codecs.
+	 */
+	public void setClassResolver(ClassResolver classResolver) {
+		this.classResolver = classResolver;
+	}
+
+	public ClassResolver getClassResolver() {
+		return classResolver;
+	}
+
+	private class ResolvingObjectInputStream extends ConfigurableObjectInputStream {
+
+		private final ClassLoader classLoader;
+
+		public ResolvingObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+			super(in, classLoader);
+			this.classLoader = classLoader;
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass classDesc) throws IOException, ClassNotFoundException {
+			return classResolver.resolve(classDesc.getName(), classLoader);
+		}
+
+		@Override
+		protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+			for (String name : interfaces) {
+				classResolver.resolve(name, classLoader);
+			}
+			return super.resolveProxyClass(interfaces);
+		}
+	}
+
+}
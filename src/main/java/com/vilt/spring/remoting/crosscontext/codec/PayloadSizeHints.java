@@ -0,0 +1,51 @@
+package com.vilt.spring.remoting.crosscontext.codec;
+
+/**
+ * Remembers the typical encoded size of the payloads of each method of a
+ * service, so that {@link EncodingBuffer}s can be sized upfront instead of
+ * growing by successive copies.
+ * 
+ * <p>
+ * Methods are identified by their index in the service method table, and any
+ * negative index shares a single slot. Hints are updated without
+ * synchronization: a lost update only costs an extra buffer growth.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public final class PayloadSizeHints {
+
+	private final int[] hints;
+
+	public PayloadSizeHints(int methods) {
+		this.hints = new int[methods + 1];
+	}
+
+	/**
+	 * Returns the expected size of the next payload of the given method.
+	 */
+	public int get(int methodIndex) {
+		return hints[slot(methodIndex)];
+	}
+
+	/**
+	 * Records the size of a payload of the given method. The hint follows
+	 * bigger payloads immediately and decays slowly towards smaller ones, with
+	 * some slack for payloads slightly bigger than the last ones.
+	 */
+	public void record(int methodIndex, int size) {
+		int slot = slot(methodIndex);
+		int hint = hints[slot];
+		int padded = size + (size >> 3);
+		if (padded > hint) {
+			hints[slot] = padded;
+		} else {
+			hints[slot] = hint - ((hint - padded) >> 2);
+		}
+	}
+
+	private int slot(int methodIndex) {
+		return methodIndex >= 0 && methodIndex < hints.length - 1 ? methodIndex : hints.length - 1;
+	}
+
+}
@@ -0,0 +1,627 @@
+package com.vilt.spring.remoting.crosscontext.copy;
+
+import java.io.Externalizable;
+import java.io.File;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import com.vilt.spring.remoting.crosscontext.codec.CodecUtils;
+import com.vilt.spring.remoting.crosscontext.codec.CrossContextCodec;
+import com.vilt.spring.remoting.crosscontext.codec.JdkSerializationCodec;
+
+/**
+ * Copies object graphs into a target class loader, rebuilding each object with
+ * the class of the same name resolved by that class loader.
+ * 
+ * <p>
+ * For each class, a copy plan is computed once and cached. Immutable JDK
+ * types are copied by reference, arrays, JDK collections and maps are rebuilt
+ * element by element and other objects are rebuilt field by field, skipping
+ * transient fields as Java serialization would. Shared references and cycles
+ * are preserved.
+ * 
+ * <p>
+ * Objects for which no such plan can be computed (classes with custom
+ * serialization methods, or extending JDK classes with state of their own,
+ * like exceptions) are copied by a serialization round trip.
+ * 
+ * <p>
+ * Binary payloads aren't copied either: input streams are handed over as they
+ * are and byte buffers as read-only views of their content.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public class DeepCopier {
+
+	private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>();
+
+	static {
+		IMMUTABLE_TYPES.add(String.class);
+		IMMUTABLE_TYPES.add(Boolean.class);
+		IMMUTABLE_TYPES.add(Character.class);
+		IMMUTABLE_TYPES.add(Byte.class);
+		IMMUTABLE_TYPES.add(Short.class);
+		IMMUTABLE_TYPES.add(Integer.class);
+		IMMUTABLE_TYPES.add(Long.class);
+		IMMUTABLE_TYPES.add(Float.class);
+		IMMUTABLE_TYPES.add(Double.class);
+		IMMUTABLE_TYPES.add(BigInteger.class);
+		IMMUTABLE_TYPES.add(BigDecimal.class);
+		IMMUTABLE_TYPES.add(Locale.class);
+		IMMUTABLE_TYPES.add(UUID.class);
+		IMMUTABLE_TYPES.add(URI.class);
+		IMMUTABLE_TYPES.add(URL.class);
+		IMMUTABLE_TYPES.add(File.class);
+		IMMUTABLE_TYPES.add(Pattern.class);
+	}
+
+	/**
+	 * Plans are cached by class name, and classes of the same name may be
+	 * loaded by several class loaders (e.g. several calling webapps, or
+	 * redeployments of the same webapp). Only the most recent ones are kept,
+	 * so that old class loaders are not retained forever.
+	 */
+	private static final int MAX_PLANS_PER_CLASS_NAME = 4;
+
+	private static final String[] CUSTOM_SERIALIZATION_METHODS = { "writeObject", "readObject", "readObjectNoData", "writeReplace", "readResolve" };
+
+	private final ClassLoader targetClassLoader;
+	private final CrossContextCodec fallbackCodec = new JdkSerializationCodec();
+	private final Map<String, CopyPlan[]> plans = new ConcurrentHashMap<String, CopyPlan[]>();
+
+	/**
+	 * Create a copier that rebuilds objects with classes resolved by the given
+	 * class loader.
+	 */
+	public DeepCopier(ClassLoader targetClassLoader) {
+		this.targetClassLoader = targetClassLoader != null ? targetClassLoader : ClassUtils.getDefaultClassLoader();
+	}
+
+	public ClassLoader getTargetClassLoader() {
+		return targetClassLoader;
+	}
+
+	/**
+	 * Returns whether instances of the given class are immutable JDK types,
+	 * which are never copied.
+	 */
+	public static boolean isImmutableType(Class<?> clazz) {
+		return IMMUTABLE_TYPES.contains(clazz) || (clazz.getClassLoader() == null && (Enum.class.isAssignableFrom(clazz) || clazz.getName().startsWith("java.time.")));
+	}
+
+	/**
+	 * Copies the given object graph into the target class loader.
+	 */
+	public Object copy(Object source) {
+		return copy(source, new IdentityHashMap<Object, Object>());
+	}
+
+	/**
+	 * Returns the given object graph itself if the target class loader
+	 * resolves the classes of all its objects to the very same classes, so
+	 * that it can be shared, or a copy of it otherwise.
+	 */
+	public Object share(Object source) {
+		return isShared(source) ? source : copy(source);
+	}
+
+	/**
+	 * Returns whether the target class loader resolves the classes of all the
+	 * objects of the given graph to the very same classes, as when they're
+	 * loaded by a class loader shared by both contexts. Whether each class is
+	 * shared is found out once, along with its copy plan.
+	 * 
+	 * <p>
+	 * Objects that would be copied by serialization are never considered
+	 * shared, as their state can't be inspected.
+	 */
+	public boolean isShared(Object source) {
+		return isShared(source, new IdentityHashMap<Object, Object>());
+	}
+
+	/**
+	 * Discards all the cached copy plans.
+	 */
+	public void clearCache() {
+		plans.clear();
+	}
+
+	private Object copy(Object source, Map<Object, Object> copies) {
+		if (source == null) {
+			return null;
+		}
+		Object copy = copies.get(source);
+		if (copy != null) {
+			return copy;
+		}
+		return getPlan(source.getClass()).copy(source, copies);
+	}
+
+	private boolean isShared(Object source, Map<Object, Object> visited) {
+		if (source == null || visited.put(source, source) != null) {
+			return true;
+		}
+		return getPlan(source.getClass()).isShared(source, visited);
+	}
+
+	private CopyPlan getPlan(Class<?> sourceClass) {
+		String name = sourceClass.getName();
+		CopyPlan[] candidates = plans.get(name);
+		if (candidates != null) {
+			for (CopyPlan candidate : candidates) {
+				if (candidate.sourceClass == sourceClass) {
+					return candidate;
+				}
+			}
+		}
+		CopyPlan plan = createPlan(sourceClass);
+		int kept = candidates == null ? 0 : Math.min(candidates.length, MAX_PLANS_PER_CLASS_NAME - 1);
+		CopyPlan[] updated = new CopyPlan[kept + 1];
+		updated[0] = plan;
+		if (kept > 0) {
+			System.arraycopy(candidates, 0, updated, 1, kept);
+		}
+		plans.put(name, updated);
+		return plan;
+	}
+
+	private CopyPlan createPlan(Class<?> sourceClass) {
+		if (isImmutableType(sourceClass)) {
+			return new ReferencePlan(sourceClass);
+		}
+		if (sourceClass == Class.class) {
+			return new ClassPlan(sourceClass);
+		}
+		if (Enum.class.isAssignableFrom(sourceClass)) {
+			Class<?> enumClass = sourceClass.isEnum() ? sourceClass : sourceClass.getSuperclass();
+			return new EnumPlan(sourceClass, resolveTargetClass(enumClass));
+		}
+		if (sourceClass.isArray()) {
+			return new ArrayPlan(sourceClass, resolveTargetClass(sourceClass).getComponentType());
+		}
+		if (sourceClass == Date.class) {
+			return new DatePlan(sourceClass);
+		}
+		if (InputStream.class.isAssignableFrom(sourceClass)) {
+			return new ReferencePlan(sourceClass);
+		}
+		if (ByteBuffer.class.isAssignableFrom(sourceClass)) {
+			return new ByteBufferPlan(sourceClass);
+		}
+		if (sourceClass.getClassLoader() == null) {
+			Constructor<?> constructor = getJdkContainerConstructor(sourceClass);
+			if (constructor != null && Collection.class.isAssignableFrom(sourceClass)) {
+				return new CollectionPlan(sourceClass, constructor);
+			}
+			if (constructor != null && Map.class.isAssignableFrom(sourceClass)) {
+				return new MapPlan(sourceClass, constructor);
+			}
+			return new SerializationPlan(sourceClass);
+		}
+		Class<?> targetClass = resolveTargetClass(sourceClass);
+		if (!isFieldCopyable(sourceClass) || !isFieldCopyable(targetClass)) {
+			return new SerializationPlan(sourceClass);
+		}
+		return new ObjectPlan(sourceClass, targetClass, Instantiators.forClass(targetClass), getFieldPairs(sourceClass, targetClass));
+	}
+
+	private Class<?> resolveTargetClass(Class<?> sourceClass) {
+		if (sourceClass.isPrimitive() || sourceClass.getClassLoader() == null) {
+			return sourceClass;
+		}
+		try {
+			return ClassUtils.forName(sourceClass.getName(), targetClassLoader);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("Class " + sourceClass.getName() + " could not be found by class loader " + targetClassLoader, e);
+		}
+	}
+
+	/**
+	 * Returns the constructor used to rebuild JDK collections and maps, either
+	 * taking a comparator, for sorted ones, or taking no arguments. Priority
+	 * and blocking queues and linked hash maps hold more than their elements,
+	 * a comparator, a capacity or an access order, which these constructors
+	 * would lose, so they're left to serialization.
+	 */
+	private Constructor<?> getJdkContainerConstructor(Class<?> clazz) {
+		if (Modifier.isAbstract(clazz.getModifiers()) || !Modifier.isPublic(clazz.getModifiers())) {
+			return null;
+		}
+		if (PriorityQueue.class.isAssignableFrom(clazz) || BlockingQueue.class.isAssignableFrom(clazz)
+				|| LinkedHashMap.class.isAssignableFrom(clazz)) {
+			return null;
+		}
+		boolean sorted = SortedSet.class.isAssignableFrom(clazz) || SortedMap.class.isAssignableFrom(clazz);
+		try {
+			return sorted ? clazz.getConstructor(Comparator.class) : clazz.getConstructor();
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns whether instances of the given class can be rebuilt field by
+	 * field: it must be concrete, must not customize its serialization and its
+	 * state must not be held by JDK superclasses.
+	 */
+	private boolean isFieldCopyable(Class<?> clazz) {
+		if (clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers()) || Externalizable.class.isAssignableFrom(clazz)) {
+			return false;
+		}
+		for (Class<?> current = clazz; current != Object.class; current = current.getSuperclass()) {
+			if (current.getClassLoader() == null) {
+				for (Field field : current.getDeclaredFields()) {
+					if (!Modifier.isStatic(field.getModifiers())) {
+						return false;
+					}
+				}
+				continue;
+			}
+			for (Method method : current.getDeclaredMethods()) {
+				for (String name : CUSTOM_SERIALIZATION_METHODS) {
+					if (method.getName().equals(name)) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private FieldPair[] getFieldPairs(Class<?> sourceClass, Class<?> targetClass) {
+		Map<String, Field> targetFields = new HashMap<String, Field>();
+		for (Field field : getCopyableFields(targetClass)) {
+			targetFields.put(field.getDeclaringClass().getName() + "." + field.getName(), field);
+		}
+		List<FieldPair> pairs = new ArrayList<FieldPair>();
+		for (Field field : getCopyableFields(sourceClass)) {
+			Field targetField = targetFields.get(field.getDeclaringClass().getName() + "." + field.getName());
+			if (targetField != null) {
+				pairs.add(new FieldPair(field, targetField));
+			}
+		}
+		return pairs.toArray(new FieldPair[pairs.size()]);
+	}
+
+	private List<Field> getCopyableFields(Class<?> clazz) {
+		List<Field> fields = new ArrayList<Field>();
+		for (Class<?> current = clazz; current != null && current.getClassLoader() != null; current = current.getSuperclass()) {
+			for (Field field : current.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+				if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+					ReflectionUtils.makeAccessible(field);
+					fields.add(field);
+				}
+			}
+		}
+		return fields;
+	}
+
+	private static abstract class CopyPlan {
+		final Class<?> sourceClass;
+
+		CopyPlan(Class<?> sourceClass) {
+			this.sourceClass = sourceClass;
+		}
+
+		abstract Object copy(Object source, Map<Object, Object> copies);
+
+		abstract boolean isShared(Object source, Map<Object, Object> visited);
+	}
+
+	private static class ReferencePlan extends CopyPlan {
+		ReferencePlan(Class<?> sourceClass) {
+			super(sourceClass);
+		}
+
+		@Override
+		Object copy(Object source, Map<Object, Object> copies) {
+			return source;
+		}
+
+		@Override
+		boolean isShared(Object source, Map<Object, Object> visited) {
+			return true;
+		}
+	}
+
+	private class ClassPlan extends CopyPlan {
+		ClassPlan(Class<?> sourceClass) {
+			super(sourceClass);
+		}
+
+		@Override
+		Object copy(Object source, Map<Object, Object> copies) {
+			return resolveTargetClass((Class<?>) source);
+		}
+
+		@Override
+		boolean isShared(Object source, Map<Object, Object> visited) {
+			return resolveTargetClass((Class<?>) source) == source;
+		}
+	}
+
+	private static class EnumPlan extends CopyPlan {
+		private final Class<?> targetClass;
+
+		EnumPlan(Class<?> sourceClass, Class<?> targetClass) {
+			super(sourceClass);
+			this.targetClass = targetClass;
+		}
+
+		@Override
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Object copy(Object source, Map<Object, Object> copies) {
+			return Enum.valueOf((Class) targetClass, ((Enum<?>) source).name());
+		}
+
+		@Override
+		boolean isShared(Object source, Map<Object, Object> visited) {
+			return targetClass.isAssignableFrom(sourceClass);
+		}
+	}
+
+	private static class DatePlan extends CopyPlan {
+		DatePlan(Class<?> sourceClass) {
+			super(sourceClass);
+		}
+
+		@Override
+		Object copy(Object source, Map<Object, Object> copies) {
+			Date copy = new Date(((Date) source).getTime());
+			copies.put(source, copy);
+			return copy;
+		}
+
+		@Override
+		boolean isShared(Object source, Map<Object, Object> visited) {
+			return true;
+		}
+	}
+
+	private static class ByteBufferPlan extends CopyPlan {
+		ByteBufferPlan(Class<?> sourceClass) {
+			super(sourceClass);
+		}
+
+		@Override
+		Object copy(Object source, Map<Object, Object> copies) {
+			ByteBuffer buffer = (ByteBuffer) source;
+			ByteBuffer copy = buffer.isReadOnly() ? buffer : buffer.asReadOnlyBuffer();
+			copies.put(source, copy);
+			return copy;
+		}
+
+		@Override
+		boolean isShared(Object source, Map<Object, Object> visited) {
+			return ((ByteBuffer) source).isReadOnly();
+		}
+	}
+
+	private class ArrayPlan extends CopyPlan {
+		private final Class<?> targetComponentType;
+
+		ArrayPlan(Class<?> sourceClass, Class<?> targetComponentType) {
+			super(sourceClass);
+			this.targetComponentType = targetComponentType;
+		}
+
+		@Override
+		Object copy(Object source, Map<Object, Object> copies) {
+			int length = Array.getLength(source);
+			Object copy = Array.newInstance(targetComponentType, length);
+			copies.put(source, copy);
+			if (targetComponentType.isPrimitive()) {
+				System.arraycopy(source, 0, copy, 0, length);
+			} else {
+				Object[] sourceArray = (Object[]) source;
+				Object[] copyArray = (Object[]) copy;
+				for (int i = 0; i < length; i++) {
+					copyArray[i] = DeepCopier.this.copy(sourceArray[i], copies);
+				}
+			}
+			return copy;
+		}
+
+		@Override
+		boolean isShared(Object source, Map<Object, Object> visited) {
+			if (targetComponentType != sourceClass.getComponentType()) {
+				return false;
+			}
+			if (!targetComponentType.isPrimitive()) {
+				for (Object element : (Object[]) source) {
+					if (!DeepCopier.this.isShared(element, visited)) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+	}
+
+	private class CollectionPlan extends CopyPlan {
+		private final Constructor<?> constructor;
+
+		CollectionPlan(Class<?> sourceClass, Constructor<?> constructor) {
+			super(sourceClass);
+			this.constructor = constructor;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		Object copy(Object source, Map<Object, Object> copies) {
+			Collection<Object> copy;
+			if (source instanceof SortedSet) {
+				Object comparator = DeepCopier.this.copy(((SortedSet<?>) source).comparator(), copies);
+				copy = (Collection<Object>) Instantiators.newInstance(constructor, comparator);
+			} else {
+				copy = (Collection<Object>) Instantiators.newInstance(constructor);
+			}
+			copies.put(source, copy);
+			for (Object element : (Collection<?>) source) {
+				copy.add(DeepCopier.this.copy(element, copies));
+			}
+			return copy;
+		}
+
+		@Override
+		boolean isShared(Object source, Map<Object, Object> visited) {
+			if (source instanceof SortedSet && !DeepCopier.this.isShared(((SortedSet<?>) source).comparator(), visited)) {
+				return false;
+			}
+			for (Object element : (Collection<?>) source) {
+				if (!DeepCopier.this.isShared(element, visited)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private class MapPlan extends CopyPlan {
+		private final Constructor<?> constructor;
+
+		MapPlan(Class<?> sourceClass, Constructor<?> constructor) {
+			super(sourceClass);
+			this.constructor = constructor;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		Object copy(Object source, Map<Object, Object> copies) {
+			Map<Object, Object> copy;
+			if (source instanceof SortedMap) {
+				Object comparator = DeepCopier.this.copy(((SortedMap<?, ?>) source).comparator(), copies);
+				copy = (Map<Object, Object>) Instantiators.newInstance(constructor, comparator);
+			} else {
+				copy = (Map<Object, Object>) Instantiators.newInstance(constructor);
+			}
+			copies.put(source, copy);
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) source).entrySet()) {
+				copy.put(DeepCopier.this.copy(entry.getKey(), copies), DeepCopier.this.copy(entry.getValue(), copies));
+			}
+			return copy;
+		}
+
+		@Override
+		boolean isShared(Object source, Map<Object, Object> visited) {
+			if (source instanceof SortedMap && !DeepCopier.this.isShared(((SortedMap<?, ?>) source).comparator(), visited)) {
+				return false;
+			}
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) source).entrySet()) {
+				if (!DeepCopier.this.isShared(entry.getKey(), visited) || !DeepCopier.this.isShared(entry.getValue(), visited)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private class ObjectPlan extends CopyPlan {
+		private final Class<?> targetClass;
+		private final Constructor<?> instantiator;
+		private final FieldPair[] fieldPairs;
+
+		ObjectPlan(Class<?> sourceClass, Class<?> targetClass, Constructor<?> instantiator, FieldPair[] fieldPairs) {
+			super(sourceClass);
+			this.targetClass = targetClass;
+			this.instantiator = instantiator;
+			this.fieldPairs = fieldPairs;
+		}
+
+		@Override
+		Object copy(Object source, Map<Object, Object> copies) {
+			Object copy = Instantiators.newInstance(instantiator);
+			copies.put(source, copy);
+			try {
+				for (FieldPair pair : fieldPairs) {
+					Object value = pair.source.get(source);
+					pair.target.set(copy, pair.primitive ? value : DeepCopier.this.copy(value, copies));
+				}
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Could not copy instance of " + targetClass.getName(), e);
+			}
+			return copy;
+		}
+
+		@Override
+		boolean isShared(Object source, Map<Object, Object> visited) {
+			if (targetClass != sourceClass) {
+				return false;
+			}
+			try {
+				for (FieldPair pair : fieldPairs) {
+					if (!pair.primitive && !DeepCopier.this.isShared(pair.source.get(source), visited)) {
+						return false;
+					}
+				}
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Could not inspect instance of " + targetClass.getName(), e);
+			}
+			return true;
+		}
+	}
+
+	private class SerializationPlan extends CopyPlan {
+		SerializationPlan(Class<?> sourceClass) {
+			super(sourceClass);
+		}
+
+		@Override
+		Object copy(Object source, Map<Object, Object> copies) {
+			Object copy = CodecUtils.decode(fallbackCodec, CodecUtils.encode(fallbackCodec, source), targetClassLoader);
+			copies.put(source, copy);
+			return copy;
+		}
+
+		@Override
+		boolean isShared(Object source, Map<Object, Object> visited) {
+			return false;
+		}
+	}
+
+	private static class FieldPair {
+		final Field source;
+		final Field target;
+		final boolean primitive;
+
+		FieldPair(Field source, Field target) {
+			this.source = source;
+			this.target = target;
+			this.primitive = target.getType().isPrimitive();
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package com.vilt.spring.remoting.crosscontext.copy;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Creates the constructors used to instantiate copies.
+ * 
+ * <p>
+ * When available, the same kind of constructor used by Java serialization is
+ * used, so that no constructor of the copied class itself is run. Otherwise,
+ * the class must declare a no-arg constructor.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+abstract class Instantiators {
+
+	private static final Object reflectionFactory;
+	private static final Method newConstructorForSerialization;
+
+	static {
+		Object factory = null;
+		Method method = null;
+		try {
+			Class<?> factoryClass = Class.forName("sun.reflect.ReflectionFactory");
+			factory = factoryClass.getMethod("getReflectionFactory").invoke(null);
+			method = factoryClass.getMethod("newConstructorForSerialization", Class.class, Constructor.class);
+		} catch (Throwable e) {
+			// not available on this JVM, fall back to no-arg constructors
+			factory = null;
+			method = null;
+		}
+		reflectionFactory = factory;
+		newConstructorForSerialization = method;
+	}
+
+	static Constructor<?> forClass(Class<?> clazz) {
+		if (newConstructorForSerialization != null) {
+			try {
+				Constructor<?> constructor = (Constructor<?>) newConstructorForSerialization.invoke(reflectionFactory, clazz,
+						Object.class.getDeclaredConstructor());
+				if (constructor != null) {
+					ReflectionUtils.makeAccessible(constructor);
+					return constructor;
+				}
+			} catch (Exception e) {
+				// fall back to the no-arg constructor
+			}
+		}
+		try {
+			Constructor<?> constructor = clazz.getDeclaredConstructor();
+			ReflectionUtils.makeAccessible(constructor);
+			return constructor;
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException("Class " + clazz.getName() + " cannot be copied since it doesn't declare a no-arg constructor", e);
+		}
+	}
+
+	static Object newInstance(Constructor<?> constructor, Object... arguments) {
+		try {
+			return constructor.newInstance(arguments);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("Could not instantiate " + constructor.getDeclaringClass().getName(), e.getTargetException());
+		} catch (Exception e) {
+			throw new IllegalStateException("Could not instantiate " + constructor.getDeclaringClass().getName(), e);
+		}
+	}
+
+}
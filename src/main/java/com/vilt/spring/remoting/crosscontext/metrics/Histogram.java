@@ -0,0 +1,80 @@
+package com.vilt.spring.remoting.crosscontext.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values, with power of two buckets:
+ * bucket <code>i</code> counts the values between <code>2^(i-1)</code>
+ * (inclusive) and <code>2^i</code> (exclusive), bucket <code>0</code>
+ * counting zeros.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public class Histogram {
+
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long currentMax;
+		while (value > (currentMax = max.get())) {
+			if (max.compareAndSet(currentMax, value)) {
+				break;
+			}
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getSum() {
+		return sum.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long count = this.count.get();
+		return count == 0 ? 0 : (double) sum.get() / count;
+	}
+
+	/**
+	 * Returns the counts of each bucket, up to the last non-empty one.
+	 */
+	public long[] getBuckets() {
+		int last = BUCKETS - 1;
+		while (last >= 0 && buckets.get(last) == 0) {
+			last--;
+		}
+		long[] result = new long[last + 1];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = buckets.get(i);
+		}
+		return result;
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+}
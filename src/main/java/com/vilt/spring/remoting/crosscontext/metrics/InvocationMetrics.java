@@ -0,0 +1,142 @@
+package com.vilt.spring.remoting.crosscontext.metrics;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.vilt.spring.remoting.crosscontext.ServiceMethodTable;
+
+/**
+ * The {@link MethodMetrics} of all the methods of a service, on one side of a
+ * cross context call, and their registration as JMX MBeans.
+ * 
+ * <p>
+ * MBeans are named
+ * <code>com.vilt.spring.remoting.crosscontext:type=&lt;type&gt;,context="&lt;path&gt;",serviceUrl="&lt;url&gt;",interface=&lt;interface&gt;,method="&lt;signature&gt;"</code>
+ * , where the type is either <code>CrossContextProxy</code> or
+ * <code>CrossContextExporter</code> and the context is the path of the
+ * servlet context the proxy or exporter lives in, so that the callers of a
+ * service in different contexts, which share the platform MBean server, each
+ * get their own. Invocations of several methods sent as a
+ * single batch are accounted under the <code>batch</code> method, and those of
+ * methods not in the service interface under <code>other</code>.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public class InvocationMetrics {
+
+	public static final String DOMAIN = "com.vilt.spring.remoting.crosscontext";
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final String type;
+	private final String contextPath;
+	private final String serviceUrl;
+	private final ServiceMethodTable methodTable;
+	private final MethodMetrics[] methodMetrics;
+	private final MethodMetrics batchMetrics = new MethodMetrics("batch");
+	private final MethodMetrics otherMetrics = new MethodMetrics("other");
+
+	private MBeanServer mbeanServer;
+	private final List<ObjectName> registeredNames = new ArrayList<ObjectName>();
+
+	/**
+	 * @param contextPath
+	 *            path of the servlet context the metrics are taken in, or
+	 *            <code>null</code> if unknown
+	 */
+	public InvocationMetrics(String type, String contextPath, String serviceUrl, ServiceMethodTable methodTable) {
+		this.type = type;
+		this.contextPath = contextPath;
+		this.serviceUrl = serviceUrl;
+		this.methodTable = methodTable;
+		this.methodMetrics = new MethodMetrics[methodTable.size()];
+		for (int i = 0; i < methodMetrics.length; i++) {
+			methodMetrics[i] = new MethodMetrics(methodTable.getSignature(i));
+		}
+	}
+
+	public MethodMetrics getMethodMetrics(Method method) {
+		return getMethodMetrics(methodTable.indexOf(method));
+	}
+
+	public MethodMetrics getMethodMetrics(int methodIndex) {
+		return methodIndex >= 0 && methodIndex < methodMetrics.length ? methodMetrics[methodIndex] : otherMetrics;
+	}
+
+	public MethodMetrics getBatchMetrics() {
+		return batchMetrics;
+	}
+
+	/**
+	 * Registers an MBean for each method in the given MBean server. If any of
+	 * them can't be registered, those already registered are unregistered.
+	 */
+	public synchronized void registerMBeans(MBeanServer mbeanServer) throws JMException {
+		this.mbeanServer = mbeanServer;
+		try {
+			for (MethodMetrics metrics : methodMetrics) {
+				register(metrics, "method", metrics.getMethod());
+			}
+			register(batchMetrics, "method", batchMetrics.getMethod());
+			register(otherMetrics, "method", otherMetrics.getMethod());
+		} catch (JMException e) {
+			unregisterMBeans();
+			throw e;
+		}
+	}
+
+	/**
+	 * Registers an additional MBean related to the service, named after the
+	 * method MBeans with the given key and value instead of the method, until
+	 * {@link #unregisterMBeans()}. Must be called after
+	 * {@link #registerMBeans(MBeanServer)}. If it can't be registered, all the
+	 * MBeans of the service are unregistered.
+	 */
+	public synchronized void registerMBean(Object mbean, String key, String value) throws JMException {
+		if (mbeanServer == null) {
+			throw new IllegalStateException("The method MBeans must be registered first");
+		}
+		try {
+			register(mbean, key, value);
+		} catch (JMException e) {
+			unregisterMBeans();
+			throw e;
+		}
+	}
+
+	/**
+	 * Unregisters all the MBeans previously registered.
+	 */
+	public synchronized void unregisterMBeans() {
+		for (ObjectName name : registeredNames) {
+			try {
+				mbeanServer.unregisterMBean(name);
+			} catch (Exception e) {
+				logger.warn("Could not unregister MBean " + name, e);
+			}
+		}
+		registeredNames.clear();
+	}
+
+	private void register(Object mbean, String key, String value) throws JMException {
+		StringBuilder name = new StringBuilder(DOMAIN).append(":type=").append(type);
+		if (contextPath != null) {
+			name.append(",context=").append(ObjectName.quote(contextPath.length() > 0 ? contextPath : "/"));
+		}
+		name.append(",serviceUrl=").append(ObjectName.quote(serviceUrl)).append(",interface=").append(methodTable.getServiceInterface().getName());
+		name.append(",").append(key).append("=").append(ObjectName.quote(value));
+		ObjectName objectName = new ObjectName(name.toString());
+		mbeanServer.registerMBean(mbean, objectName);
+		registeredNames.add(objectName);
+	}
+
+}
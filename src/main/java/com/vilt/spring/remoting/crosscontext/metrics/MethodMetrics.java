@@ -0,0 +1,168 @@
+package com.vilt.spring.remoting.crosscontext.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and histograms of the invocations of a single method, on one side
+ * of a cross context call.
+ * 
+ * <p>
+ * On the proxy side, the serialize and deserialize phases correspond to the
+ * invocation and the result respectively, and the dispatch phase includes
+ * everything that happens in the remote context. On the exporter side, the
+ * deserialize and serialize phases correspond to the invocation and the result
+ * respectively, and the execute phase is the service method itself.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public class MethodMetrics implements MethodMetricsMBean {
+
+	private static final double NANOS_PER_MICRO = 1000d;
+
+	private final String method;
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final Histogram serialize = new Histogram();
+	private final Histogram dispatch = new Histogram();
+	private final Histogram execute = new Histogram();
+	private final Histogram deserialize = new Histogram();
+	private final Histogram requestSize = new Histogram();
+	private final Histogram responseSize = new Histogram();
+
+	public MethodMetrics(String method) {
+		this.method = method;
+	}
+
+	public void recordCall() {
+		calls.incrementAndGet();
+	}
+
+	public void recordError() {
+		errors.incrementAndGet();
+	}
+
+	public void recordSerialize(long nanos) {
+		serialize.record(nanos);
+	}
+
+	public void recordDispatch(long nanos) {
+		dispatch.record(nanos);
+	}
+
+	public void recordExecute(long nanos) {
+		execute.record(nanos);
+	}
+
+	public void recordDeserialize(long nanos) {
+		deserialize.record(nanos);
+	}
+
+	public void recordRequestSize(long bytes) {
+		requestSize.record(bytes);
+	}
+
+	public void recordResponseSize(long bytes) {
+		responseSize.record(bytes);
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public long getCallCount() {
+		return calls.get();
+	}
+
+	public long getErrorCount() {
+		return errors.get();
+	}
+
+	public double getSerializeMeanMicros() {
+		return serialize.getMean() / NANOS_PER_MICRO;
+	}
+
+	public long getSerializeMaxMicros() {
+		return toMicros(serialize.getMax());
+	}
+
+	public long[] getSerializeHistogram() {
+		return serialize.getBuckets();
+	}
+
+	public double getDispatchMeanMicros() {
+		return dispatch.getMean() / NANOS_PER_MICRO;
+	}
+
+	public long getDispatchMaxMicros() {
+		return toMicros(dispatch.getMax());
+	}
+
+	public long[] getDispatchHistogram() {
+		return dispatch.getBuckets();
+	}
+
+	public double getExecuteMeanMicros() {
+		return execute.getMean() / NANOS_PER_MICRO;
+	}
+
+	public long getExecuteMaxMicros() {
+		return toMicros(execute.getMax());
+	}
+
+	public long[] getExecuteHistogram() {
+		return execute.getBuckets();
+	}
+
+	public double getDeserializeMeanMicros() {
+		return deserialize.getMean() / NANOS_PER_MICRO;
+	}
+
+	public long getDeserializeMaxMicros() {
+		return toMicros(deserialize.getMax());
+	}
+
+	public long[] getDeserializeHistogram() {
+		return deserialize.getBuckets();
+	}
+
+	public double getRequestMeanBytes() {
+		return requestSize.getMean();
+	}
+
+	public long getRequestMaxBytes() {
+		return requestSize.getMax();
+	}
+
+	public long[] getRequestSizeHistogram() {
+		return requestSize.getBuckets();
+	}
+
+	public double getResponseMeanBytes() {
+		return responseSize.getMean();
+	}
+
+	public long getResponseMaxBytes() {
+		return responseSize.getMax();
+	}
+
+	public long[] getResponseSizeHistogram() {
+		return responseSize.getBuckets();
+	}
+
+	public void reset() {
+		calls.set(0);
+		errors.set(0);
+		serialize.reset();
+		dispatch.reset();
+		execute.reset();
+		deserialize.reset();
+		requestSize.reset();
+		responseSize.reset();
+	}
+
+	private static long toMicros(long nanos) {
+		return nanos / 1000;
+	}
+
+}
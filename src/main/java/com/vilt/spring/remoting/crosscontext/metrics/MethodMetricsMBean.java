@@ -0,0 +1,57 @@
+package com.vilt.spring.remoting.crosscontext.metrics;
+
+/**
+ * JMX management interface of {@link MethodMetrics}. Latencies are in
+ * microseconds, sizes in bytes, and histograms are the counts of power of two
+ * buckets (see {@link Histogram}) of nanoseconds or bytes.
+ * 
+ * @author Ricardo Santos
+ * @since 1.1
+ */
+public interface MethodMetricsMBean {
+
+	String getMethod();
+
+	long getCallCount();
+
+	long getErrorCount();
+
+	double getSerializeMeanMicros();
+
+	long getSerializeMaxMicros();
+
+	long[] getSerializeHistogram();
+
+	double getDispatchMeanMicros();
+
+	long getDispatchMaxMicros();
+
+	long[] getDispatchHistogram();
+
+	double getExecuteMeanMicros();
+
+	long getExecuteMaxMicros();
+
+	long[] getExecuteHistogram();
+
+	double getDeserializeMeanMicros();
+
+	long getDeserializeMaxMicros();
+
+	long[] getDeserializeHistogram();
+
+	double getRequestMeanBytes();
+
+	long getRequestMaxBytes();
+
+	long[] getRequestSizeHistogram();
+
+	double getResponseMeanBytes();
+
+	long getResponseMaxBytes();
+
+	long[] getResponseSizeHistogram();
+
+	void reset();
+
+}
@@ -0,0 +1,148 @@
+package com.vilt.spring.context.response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+
+public class OncePerRequestContextFilterTest {
+
+	private static class CountingFilter extends OncePerRequestContextFilter {
+		private int count;
+		private Object attributeWhileFiltering;
+
+		@Override
+		protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException,
+				IOException {
+			count++;
+			attributeWhileFiltering = request.getAttribute(getAlreadyFilteredAttributeName());
+			filterChain.doFilter(request, response);
+		}
+	}
+
+	private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+	private CountingFilter createFilter(String name, boolean trackWithRequestAttribute) throws ServletException {
+		CountingFilter filter = new CountingFilter();
+		filter.setTrackWithRequestAttribute(trackWithRequestAttribute);
+		filter.init(new MockFilterConfig(new MockServletContext(), name));
+		return filter;
+	}
+
+	/**
+	 * Returns a chain that passes the request through the given filter again,
+	 * as an include or forward does.
+	 */
+	private FilterChain reentering(final OncePerRequestContextFilter filter) {
+		return new FilterChain() {
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+				filter.doFilter(request, response, new MockFilterChain());
+			}
+		};
+	}
+
+	@Test
+	public void testSameContextIncludeIsSkipped() throws Exception {
+		testSameContextIncludeIsSkipped(false);
+	}
+
+	@Test
+	public void testSameContextIncludeIsSkippedWithRequestAttribute() throws Exception {
+		testSameContextIncludeIsSkipped(true);
+	}
+
+	private void testSameContextIncludeIsSkipped(boolean trackWithRequestAttribute) throws Exception {
+		CountingFilter filter = createFilter("filter", trackWithRequestAttribute);
+
+		filter.doFilter(new MockHttpServletRequest(), response, reentering(filter));
+
+		assertEquals(1, filter.count);
+	}
+
+	@Test
+	public void testNewRequestOnSameThreadIsFiltered() throws Exception {
+		testNewRequestOnSameThreadIsFiltered(false);
+	}
+
+	@Test
+	public void testNewRequestOnSameThreadIsFilteredWithRequestAttribute() throws Exception {
+		testNewRequestOnSameThreadIsFiltered(true);
+	}
+
+	private void testNewRequestOnSameThreadIsFiltered(boolean trackWithRequestAttribute) throws Exception {
+		CountingFilter filter = createFilter("filter", trackWithRequestAttribute);
+
+		filter.doFilter(new MockHttpServletRequest(), response, reentering(filter));
+		filter.doFilter(new MockHttpServletRequest(), response, reentering(filter));
+
+		assertEquals(2, filter.count);
+	}
+
+	@Test
+	public void testCrossContextIncludeIsFilteredByRemoteContext() throws Exception {
+		testCrossContextIncludeIsFilteredByRemoteContext(false);
+	}
+
+	@Test
+	public void testCrossContextIncludeIsFilteredByRemoteContextWithRequestAttribute() throws Exception {
+		testCrossContextIncludeIsFilteredByRemoteContext(true);
+	}
+
+	private void testCrossContextIncludeIsFilteredByRemoteContext(boolean trackWithRequestAttribute) throws Exception {
+		CountingFilter filter = createFilter("filter", trackWithRequestAttribute);
+		CountingFilter remoteFilter = createFilter("filter", trackWithRequestAttribute);
+
+		filter.doFilter(new MockHttpServletRequest(), response, reentering(remoteFilter));
+
+		assertEquals(1, filter.count);
+		assertEquals(1, remoteFilter.count);
+	}
+
+	@Test
+	public void testRequestAttributeIsSetWhileFiltering() throws Exception {
+		CountingFilter filter = createFilter("filter", true);
+		MockHttpServletRequest request = new MockHttpServletRequest();
+
+		filter.doFilter(request, response, new MockFilterChain());
+
+		assertEquals(Boolean.TRUE, filter.attributeWhileFiltering);
+		assertNull(request.getAttribute(filter.getAlreadyFilteredAttributeName()));
+	}
+
+	@Test
+	public void testRequestAttributeIsNotSetByDefault() throws Exception {
+		CountingFilter filter = createFilter("filter", false);
+		MockHttpServletRequest request = new MockHttpServletRequest();
+
+		filter.doFilter(request, response, new MockFilterChain());
+
+		assertEquals(1, filter.count);
+		assertNull(filter.attributeWhileFiltering);
+	}
+
+	@Test
+	public void testRequestAlreadyMarkedIsSkippedWithRequestAttribute() throws Exception {
+		CountingFilter filter = createFilter("filter", true);
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setAttribute(filter.getAlreadyFilteredAttributeName(), Boolean.TRUE);
+
+		filter.doFilter(request, response, new MockFilterChain());
+
+		assertEquals(0, filter.count);
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+	private final CircuitBreaker breaker = new CircuitBreaker("test", 50, 2, 0, 1);
+
+	@Test
+	public void testFailuresOpenTheCircuit() {
+		assertFalse(breaker.acquire());
+		breaker.recordFailure(false);
+		assertFalse(breaker.acquire());
+		breaker.recordFailure(false);
+
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+	}
+
+	@Test
+	public void testOutcomesAreRecordedAgainstTheAdmissionState() {
+		boolean late = breaker.acquire();
+		assertFalse(breaker.acquire());
+		breaker.recordFailure(false);
+		assertFalse(breaker.acquire());
+		breaker.recordFailure(false);
+
+		assertTrue(breaker.acquire());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+		// calls admitted while closed don't count as trial calls
+		breaker.recordSuccess(late);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		breaker.recordFailure(late);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+		breaker.recordSuccess(true);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void testFailedTrialReopensTheCircuit() {
+		breaker.acquire();
+		breaker.recordFailure(false);
+		breaker.acquire();
+		breaker.recordFailure(false);
+
+		assertTrue(breaker.acquire());
+		breaker.recordFailure(true);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+	}
+
+}
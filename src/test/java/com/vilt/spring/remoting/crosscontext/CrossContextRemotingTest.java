@@ -4,32 +4,81 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
-
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.aop.support.AopUtils;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.mock.web.MockRequestDispatcher;
 import org.springframework.mock.web.MockServletContext;
+import org.springframework.remoting.support.RemoteInvocationResult;
+import org.springframework.scheduling.annotation.AsyncResult;
 
+import com.vilt.spring.context.response.RequestAndResponseContextExecutorService;
 import com.vilt.spring.context.response.RequestAndResponseHolder;
+import com.vilt.spring.remoting.crosscontext.codec.CompactSerializationCodec;
+import com.vilt.spring.remoting.crosscontext.codec.CrossContextCodec;
+import com.vilt.spring.remoting.crosscontext.metrics.InvocationMetrics;
+import com.vilt.spring.remoting.crosscontext.metrics.MethodMetrics;
 
 public class CrossContextRemotingTest {
 
 	private static final String RELATIVE_PATH = "/bar";
 	private static final String CONTEXT_PATH = "/foo";
 
+	private MockServletContext context;
+	private MockServletContext otherContext;
+	private MockRequestDispatcher dispatcher;
+	private CrossContextCodec exporterCodec;
+	private MockHttpServletRequest request;
+	private ServletRequest includedRequest;
+	private int includeCount;
+	private final List<ServletRequest> includedRequests = Collections.synchronizedList(new ArrayList<ServletRequest>());
+	private CrossContextServiceExporter exporter;
+	private Class<?> exporterInterface = MyService.class;
+	private Long exporterTime;
+
 	public static class FooException extends Exception {
 
 		private static final long serialVersionUID = 1L;
@@ -51,12 +100,37 @@ public class CrossContextRemotingTest {
 		public boolean equals(Object obj) {
 			return obj instanceof MyPojo && foo.equals(((MyPojo) obj).foo);
 		}
+
+		@Override
+		public int hashCode() {
+			return foo != null ? foo.hashCode() : 0;
+		}
 	}
 
 	public static interface MyService {
 		public MyPojo aMethod(String name) throws FooException;
 
 		public MyPojo anotherMethod(MyPojo pojo);
+
+		public Future<MyPojo> asyncMethod(String name) throws FooException;
+
+		@CrossContextCacheable
+		public MyPojo cachedMethod(String name);
+
+		@CrossContextCacheable
+		public MyPojo cachedCopy(MyPojo pojo);
+
+		@CrossContextIdempotent
+		public MyPojo idempotentMethod(String name);
+
+		@CrossContextStreaming(chunkSize = 2)
+		public Iterator<MyPojo> streamedMethod(int count);
+
+		public ByteBuffer binaryMethod(byte[] data, InputStream length) throws IOException;
+	}
+
+	public static interface MyNewerService extends MyService {
+		public void yetAnotherMethod();
 	}
 
 	public static class MyServiceImpl implements MyService {
@@ -69,16 +143,772 @@ public class CrossContextRemotingTest {
 			return pojo;
 		}
 
+		public Future<MyPojo> asyncMethod(String name) throws FooException {
+			if (name == null) {
+				throw new FooException();
+			}
+			return new AsyncResult<MyPojo>(new MyPojo(name));
+		}
+
+		public MyPojo cachedMethod(String name) {
+			return new MyPojo(name);
+		}
+
+		public MyPojo cachedCopy(MyPojo pojo) {
+			return new MyPojo(pojo.foo);
+		}
+
+		public MyPojo idempotentMethod(String name) {
+			return new MyPojo(name);
+		}
+
+		public Iterator<MyPojo> streamedMethod(int count) {
+			List<MyPojo> pojos = new ArrayList<MyPojo>();
+			for (int i = 0; i < count; i++) {
+				pojos.add(new MyPojo("foo" + i));
+			}
+			return pojos.iterator();
+		}
+
+		public ByteBuffer binaryMethod(byte[] data, InputStream length) throws IOException {
+			return ByteBuffer.wrap(data, 0, length.read());
+		}
+
 	}
 
 	@Test
 	public void testCrossContextWithSerialization() throws Exception {
-		testCrossContextRemoting(true);
+		testCrossContextRemoting(TransferMode.SERIALIZE);
 	}
 
 	@Test
 	public void testCrossContextWithoutSerialization() throws Exception {
-		testCrossContextRemoting(false);
+		testCrossContextRemoting(TransferMode.REFERENCE);
+	}
+
+	@Test
+	public void testCrossContextEndpointIsCached() throws Exception {
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		MyService service = (MyService) factory.getObject();
+
+		service.aMethod("bar");
+		service.aMethod("bar");
+		service.aMethod("bar");
+
+		assertEquals(1, factory.getEndpointCacheMisses());
+		assertEquals(2, factory.getEndpointCacheHits());
+		verify(context, times(1)).getContext(CONTEXT_PATH);
+	}
+
+	@Test
+	public void testCrossContextEndpointIsRevalidatedAfterRedeploy() throws Exception {
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		factory.setEndpointRevalidationInterval(0);
+		MyService service = (MyService) factory.getObject();
+
+		service.aMethod("bar");
+		MockServletContext redeployedContext = spy(new MockServletContext());
+		when(redeployedContext.getRequestDispatcher(RELATIVE_PATH)).thenReturn(dispatcher);
+		when(redeployedContext.getContextPath()).thenReturn(CONTEXT_PATH);
+		when(context.getContext(CONTEXT_PATH)).thenReturn(redeployedContext);
+		service.aMethod("bar");
+
+		assertEquals(2, factory.getEndpointCacheMisses());
+		verify(redeployedContext, times(1)).getRequestDispatcher(RELATIVE_PATH);
+	}
+
+	@Test
+	public void testCrossContextWithCopy() throws Exception {
+		testCrossContextRemoting(TransferMode.COPY);
+	}
+
+	@Test
+	public void testCrossContextWithAutoTransferMode() throws Exception {
+		testCrossContextRemoting(TransferMode.AUTO);
+	}
+
+	@Test
+	public void testCrossContextWithCompactCodec() throws Exception {
+		exporterCodec = new CompactSerializationCodec();
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		factory.setCodec(new CompactSerializationCodec());
+		MyService service = (MyService) factory.getObject();
+
+		MyPojo pojo = new MyPojo("foo");
+		MyPojo returnedPojo = service.anotherMethod(pojo);
+		assertEquals(pojo, returnedPojo);
+		assertThat(pojo, not(sameInstance(returnedPojo)));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testCrossContextWithMismatchingCodecs() throws Throwable {
+		exporterCodec = new CompactSerializationCodec();
+		MyService service = getServiceProxy(new MyServiceImpl(), true);
+
+		try {
+			service.aMethod("bar");
+		} catch (RuntimeException e) {
+			throw e.getCause();
+		}
+	}
+
+	@Test
+	public void testCrossContextWithRequestWrapper() throws Exception {
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		factory.setWrapRequest(true);
+		MyService service = (MyService) factory.getObject();
+		request.setAttribute("caller.attribute", "value");
+
+		MyPojo pojo = service.aMethod("bar");
+
+		assertEquals("bar", pojo.foo);
+		assertEquals(null, includedRequest.getAttribute("caller.attribute"));
+		assertEquals("value", request.getAttribute("caller.attribute"));
+		verify(request, never()).setAttribute(eq(CrossContextProxyBeanFactory.INVOCATION_ATTR), any());
+		verify(request, never()).removeAttribute("caller.attribute");
+	}
+
+	@Test
+	public void testCrossContextBatch() throws Throwable {
+		MyService impl = mock(MyService.class);
+		when(impl.aMethod("bar")).thenReturn(new MyPojo("bar"));
+		when(impl.aMethod("foo")).thenThrow(new FooException());
+		CrossContextProxyBeanFactory factory = getProxyFactory(impl, true);
+
+		CrossContextBatch batch = factory.createBatch();
+		MyService service = batch.getService(MyService.class);
+		assertEquals(null, service.aMethod("bar"));
+		service.aMethod("foo");
+		service.anotherMethod(new MyPojo("baz"));
+		List<RemoteInvocationResult> results = batch.execute();
+
+		assertEquals(1, includeCount);
+		assertEquals(0, batch.size());
+		assertEquals(3, results.size());
+		assertEquals(new MyPojo("bar"), results.get(0).recreate());
+		assertTrue(results.get(1).getException() instanceof FooException);
+		assertEquals(null, results.get(2).getValue());
+	}
+
+	@Test
+	public void testCrossContextWithMethodIndex() throws Exception {
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		factory.setUseMethodIndex(true);
+		MyService service = (MyService) factory.getObject();
+
+		MyPojo pojo = new MyPojo("foo");
+		assertEquals(pojo, service.anotherMethod(pojo));
+		assertEquals(new MyPojo("bar"), service.aMethod("bar"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testCrossContextWithMethodIndexAndDifferentInterface() throws Exception {
+		exporterInterface = MyNewerService.class;
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		factory.setUseMethodIndex(true);
+		MyService service = (MyService) factory.getObject();
+
+		service.aMethod("bar");
+	}
+
+	@Test
+	public void testCrossContextWithLightweightProxy() throws Exception {
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		factory.setLightweightProxy(true);
+		factory.setUseMethodIndex(true);
+		factory.afterPropertiesSet();
+		MyService service = (MyService) factory.getObject();
+
+		assertFalse(AopUtils.isAopProxy(service));
+		assertEquals(new MyPojo("bar"), service.aMethod("bar"));
+		assertEquals(service, service);
+	}
+
+	@Test
+	public void testCrossContextWithFuture() throws Exception {
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		factory.setAsyncPoolSize(2);
+		MyService service = (MyService) factory.getObject();
+		request.setAttribute("caller.attribute", "value");
+		request.addPreferredLocale(Locale.FRENCH);
+
+		Future<MyPojo> first = service.asyncMethod("foo");
+		Future<MyPojo> second = service.asyncMethod("bar");
+
+		assertEquals(new MyPojo("foo"), first.get());
+		assertEquals(new MyPojo("bar"), second.get());
+		assertThat(includedRequest, not(sameInstance((ServletRequest) request)));
+		assertFalse(includedRequest instanceof InvocationRequestWrapper);
+		assertEquals(null, includedRequest.getAttribute("caller.attribute"));
+		assertEquals(Locale.FRENCH, includedRequest.getLocale());
+		verify(request, never()).setAttribute(eq(CrossContextProxyBeanFactory.INVOCATION_ATTR), any());
+		factory.destroy();
+	}
+
+	@Test
+	public void testCrossContextWithFailedFuture() throws Exception {
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		MyService service = (MyService) factory.getObject();
+
+		try {
+			service.asyncMethod(null).get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof FooException);
+		}
+		factory.destroy();
+	}
+
+	@Test
+	public void testCrossContextWithCache() throws Exception {
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		MyService service = (MyService) factory.getObject();
+
+		MyPojo first = service.cachedMethod("foo");
+		MyPojo second = service.cachedMethod("foo");
+		service.cachedMethod("bar");
+
+		assertEquals(new MyPojo("foo"), second);
+		assertThat(second, not(sameInstance(first)));
+		assertEquals(2, includeCount);
+		assertEquals(1, factory.getCacheHits());
+		assertEquals(2, factory.getCacheMisses());
+
+		CrossContextServiceExporter exporter = new CrossContextServiceExporter();
+		exporter.setServiceInterface(MyService.class);
+		exporter.setServletContext(otherContext);
+		exporter.invalidateCache();
+
+		service.cachedMethod("foo");
+		assertEquals(3, includeCount);
+	}
+
+	@Test
+	public void testCrossContextCacheIsolatedFromCallers() throws Exception {
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), TransferMode.COPY);
+		MyService service = (MyService) factory.getObject();
+
+		// changing a returned value doesn't change the cached one
+		service.cachedMethod("foo").foo = "changed";
+		assertEquals(new MyPojo("foo"), service.cachedMethod("foo"));
+		assertEquals(1, factory.getCacheHits());
+
+		// nor does changing an argument after the call change its key
+		MyPojo argument = new MyPojo("foo");
+		service.cachedCopy(argument);
+		argument.foo = "bar";
+		assertEquals(new MyPojo("foo"), service.cachedCopy(new MyPojo("foo")));
+		assertEquals(2, factory.getCacheHits());
+		assertEquals(new MyPojo("bar"), service.cachedCopy(argument));
+		assertEquals(2, factory.getCacheHits());
+		assertEquals(3, includeCount);
+	}
+
+	@Test
+	public void testCrossContextCacheHitsWithoutEndpoint() throws Exception {
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		MyService service = (MyService) factory.getObject();
+
+		service.cachedMethod("foo");
+		long endpointCacheHits = factory.getEndpointCacheHits();
+		long endpointCacheMisses = factory.getEndpointCacheMisses();
+
+		// the remote context goes away, but the cached result is still valid
+		when(context.getContext(CONTEXT_PATH)).thenReturn(null);
+		factory.invalidateEndpoint();
+		assertEquals(new MyPojo("foo"), service.cachedMethod("foo"));
+		assertEquals(1, includeCount);
+		assertEquals(endpointCacheHits, factory.getEndpointCacheHits());
+		assertEquals(endpointCacheMisses, factory.getEndpointCacheMisses());
+	}
+
+	@Test
+	public void testCrossContextWithCoalescedCalls() throws Exception {
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl() {
+			@Override
+			public MyPojo idempotentMethod(String name) {
+				entered.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.idempotentMethod(name);
+			}
+		}, true);
+		factory.setCoalesceCalls(true);
+		factory.setAllowHeadless(true);
+		factory.afterPropertiesSet();
+		final MyService service = (MyService) factory.getObject();
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Callable<MyPojo> call = new Callable<MyPojo>() {
+				public MyPojo call() {
+					return service.idempotentMethod("foo");
+				}
+			};
+			Future<MyPojo> first = executor.submit(call);
+			entered.await();
+			Future<MyPojo> second = executor.submit(call);
+			while (factory.getCoalescedCalls() == 0) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+
+			assertEquals(new MyPojo("foo"), first.get());
+			assertEquals(new MyPojo("foo"), second.get());
+			assertThat(first.get(), not(sameInstance(second.get())));
+			assertEquals(1, includeCount);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testCrossContextWithUncontendedCoalescedCalls() throws Exception {
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		factory.setCoalesceCalls(true);
+		factory.afterPropertiesSet();
+		MyService service = (MyService) factory.getObject();
+
+		assertEquals(new MyPojo("foo"), service.idempotentMethod("foo"));
+		assertEquals(new MyPojo("foo"), service.idempotentMethod("foo"));
+		assertEquals(2, includeCount);
+		assertEquals(0, factory.getCoalescedCalls());
+	}
+
+	@Test
+	public void testCrossContextWithBulkhead() throws Exception {
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl() {
+			@Override
+			public MyPojo anotherMethod(MyPojo pojo) {
+				entered.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return pojo;
+			}
+		}, true);
+		factory.setMaxConcurrentCalls(1);
+		factory.setAllowHeadless(true);
+		factory.afterPropertiesSet();
+		final MyService service = (MyService) factory.getObject();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<MyPojo> blocked = executor.submit(new Callable<MyPojo>() {
+				public MyPojo call() {
+					return service.anotherMethod(new MyPojo("foo"));
+				}
+			});
+			entered.await();
+			try {
+				service.aMethod("bar");
+				fail();
+			} catch (BulkheadFullException e) {
+				// expected
+			}
+			release.countDown();
+
+			assertEquals(new MyPojo("foo"), blocked.get());
+			assertEquals(new MyPojo("bar"), service.aMethod("bar"));
+			Bulkhead bulkhead = factory.getBulkheads().get(0);
+			assertEquals(1, bulkhead.getRejectedCalls());
+			assertEquals(0, bulkhead.getConcurrentCalls());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testCrossContextWithCircuitBreaker() throws Exception {
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		factory.setCircuitBreakerEnabled(true);
+		factory.setCircuitBreakerWindowSize(2);
+		factory.setCircuitBreakerOpenDuration(60000);
+		factory.afterPropertiesSet();
+		MyService service = (MyService) factory.getObject();
+		when(context.getContext(CONTEXT_PATH)).thenReturn(null);
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				service.aMethod("bar");
+				fail();
+			} catch (IllegalStateException e) {
+				// context not found
+			}
+		}
+		assertEquals(CircuitBreaker.State.OPEN, factory.getCircuitBreaker().getState());
+
+		try {
+			service.aMethod("bar");
+			fail();
+		} catch (CircuitOpenException e) {
+			// expected
+		}
+		verify(context, times(2)).getContext(CONTEXT_PATH);
+		assertEquals(1, factory.getCircuitBreaker().getRejectedCalls());
+	}
+
+	@Test
+	public void testCrossContextWithDirectDispatch() throws Exception {
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		factory.setDirectDispatch(true);
+		factory.afterPropertiesSet();
+		MyService service = (MyService) factory.getObject();
+
+		CrossContextServiceExporter exporter = new CrossContextServiceExporter();
+		exporter.setServiceInterface(MyService.class);
+		exporter.setService(new MyServiceImpl());
+		exporter.setServletContext(otherContext);
+		exporter.setDirectServiceName(RELATIVE_PATH);
+		exporter.afterPropertiesSet();
+
+		MyPojo pojo = new MyPojo("foo");
+		MyPojo returned = service.anotherMethod(pojo);
+		assertEquals(pojo, returned);
+		assertThat(returned, not(sameInstance(pojo)));
+		assertEquals(0, includeCount);
+
+		// falls back to includes once the exporter is gone
+		exporter.destroy();
+		factory.invalidateEndpoint();
+		assertEquals(pojo, service.anotherMethod(pojo));
+		assertEquals(1, includeCount);
+	}
+
+	@Test
+	public void testDirectDispatchIsKeyedByServicePath() throws Exception {
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		factory.setDirectDispatch(true);
+		factory.afterPropertiesSet();
+		MyService service = (MyService) factory.getObject();
+
+		// exporters of the same interface at other paths, or unnamed, aren't used
+		CrossContextServiceExporter other = new CrossContextServiceExporter();
+		other.setServiceInterface(MyService.class);
+		other.setService(new MyServiceImpl());
+		other.setServletContext(otherContext);
+		other.setDirectServiceName("/other");
+		other.afterPropertiesSet();
+		CrossContextServiceExporter unnamed = new CrossContextServiceExporter();
+		unnamed.setServiceInterface(MyService.class);
+		unnamed.setService(new MyServiceImpl());
+		unnamed.setServletContext(otherContext);
+		unnamed.afterPropertiesSet();
+
+		assertEquals(new MyPojo("foo"), service.aMethod("foo"));
+		assertEquals(1, includeCount);
+
+		CrossContextServiceExporter duplicate = new CrossContextServiceExporter();
+		duplicate.setServiceInterface(MyService.class);
+		duplicate.setService(new MyServiceImpl());
+		duplicate.setServletContext(otherContext);
+		duplicate.setDirectServiceName("/other");
+		try {
+			duplicate.afterPropertiesSet();
+			fail("Two exporters can't be registered under the same name");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testDirectDispatchRequiresServiceInterface() throws Exception {
+		CrossContextServiceExporter exporter = new CrossContextServiceExporter();
+		exporter.setService(new MyServiceImpl());
+		exporter.afterPropertiesSet();
+
+		exporter.invokeDirect(new byte[0], null);
+	}
+
+	@Test
+	public void testCrossContextWithImmutableArguments() throws Exception {
+		MyService service = getServiceProxy(new MyServiceImpl(), true);
+
+		assertEquals(new MyPojo("bar"), service.aMethod("bar"));
+		ArgumentCaptor<Object> invocation = ArgumentCaptor.forClass(Object.class);
+		verify(request).setAttribute(eq(CrossContextProxyBeanFactory.INVOCATION_ATTR), invocation.capture());
+		assertTrue(invocation.getValue() instanceof Object[]);
+
+		assertEquals(new MyPojo("foo"), service.anotherMethod(new MyPojo("foo")));
+		verify(request, times(2)).setAttribute(eq(CrossContextProxyBeanFactory.INVOCATION_ATTR), invocation.capture());
+		assertTrue(invocation.getValue() instanceof ByteBuffer);
+	}
+
+	@Test
+	public void testCrossContextIncludeResultsAreNotPooled() throws Exception {
+		MyService service = getServiceProxy(new MyServiceImpl(), true);
+
+		assertEquals(new MyPojo("foo"), service.anotherMethod(new MyPojo("foo")));
+		ArgumentCaptor<Object> result = ArgumentCaptor.forClass(Object.class);
+		verify(request).setAttribute(eq(CrossContextProxyBeanFactory.INVOCATION_RESULT_ATTR), result.capture());
+		assertTrue(result.getValue() instanceof byte[]);
+	}
+
+	@Test
+	public void testCrossContextHeadless() throws Exception {
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		factory.setAllowHeadless(true);
+		MyService service = (MyService) factory.getObject();
+		RequestAndResponseHolder.resetHttpServletRequestAndResponse();
+
+		assertEquals(new MyPojo("foo"), service.aMethod("foo"));
+		assertEquals(new MyPojo("bar"), service.aMethod("bar"));
+
+		assertEquals(2, includeCount);
+		assertEquals(null, RequestAndResponseHolder.getHttpServletRequest());
+		assertEquals(null, RequestAndResponseHolder.getHttpServletResponse());
+		assertFalse(includedRequest.getAttributeNames().hasMoreElements());
+	}
+
+	@Test
+	public void testCrossContextFromPropagatingExecutor() throws Exception {
+		final MyService service = getServiceProxy(new MyServiceImpl(), true);
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		try {
+			ExecutorService executor = new RequestAndResponseContextExecutorService(pool);
+
+			Future<MyPojo> result = executor.submit(new Callable<MyPojo>() {
+				public MyPojo call() throws Exception {
+					return service.aMethod("bar");
+				}
+			});
+			assertEquals(new MyPojo("bar"), result.get());
+
+			Future<HttpServletRequest> unbound = pool.submit(new Callable<HttpServletRequest>() {
+				public HttpServletRequest call() throws Exception {
+					return RequestAndResponseHolder.getHttpServletRequest();
+				}
+			});
+			assertEquals(null, unbound.get());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testConcurrentCallsFromPropagatingExecutor() throws Exception {
+		final CountDownLatch entered = new CountDownLatch(2);
+		final MyService service = getServiceProxy(new MyServiceImpl() {
+			@Override
+			public MyPojo aMethod(String name) throws FooException {
+				entered.countDown();
+				try {
+					entered.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.aMethod(name);
+			}
+		}, true);
+		request.addPreferredLocale(Locale.FRENCH);
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			ExecutorService executor = new RequestAndResponseContextExecutorService(pool);
+
+			Future<MyPojo> first = executor.submit(new Callable<MyPojo>() {
+				public MyPojo call() throws Exception {
+					return service.aMethod("foo");
+				}
+			});
+			Future<MyPojo> second = executor.submit(new Callable<MyPojo>() {
+				public MyPojo call() throws Exception {
+					return service.aMethod("bar");
+				}
+			});
+			assertEquals(new MyPojo("foo"), first.get());
+			assertEquals(new MyPojo("bar"), second.get());
+
+			// each call goes through an exchange of its own, never the caller's
+			assertEquals(2, includedRequests.size());
+			assertThat(includedRequests.get(0), not(sameInstance(includedRequests.get(1))));
+			for (ServletRequest includedRequest : includedRequests) {
+				assertThat(includedRequest, not(sameInstance((ServletRequest) request)));
+				assertEquals(Locale.FRENCH, includedRequest.getLocale());
+			}
+			verify(request, never()).setAttribute(anyString(), any());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testCrossContextStreaming() throws Exception {
+		MyService service = getServiceProxy(new MyServiceImpl(), true);
+
+		Iterator<MyPojo> pojos = service.streamedMethod(5);
+		assertEquals(1, includeCount);
+		assertEquals(1, exporter.getOpenCursors());
+		for (int i = 0; i < 5; i++) {
+			assertTrue(pojos.hasNext());
+			assertEquals(new MyPojo("foo" + i), pojos.next());
+		}
+		assertFalse(pojos.hasNext());
+
+		assertEquals(3, includeCount);
+		assertEquals(0, exporter.getOpenCursors());
+	}
+
+	@Test
+	public void testCrossContextStreamingClosed() throws Exception {
+		MyService service = getServiceProxy(new MyServiceImpl(), false);
+
+		Iterator<MyPojo> pojos = service.streamedMethod(5);
+		assertEquals(new MyPojo("foo0"), pojos.next());
+		((Closeable) pojos).close();
+
+		assertEquals(0, exporter.getOpenCursors());
+		assertFalse(pojos.hasNext());
+	}
+
+	@Test
+	public void testCrossContextStreamingExpiresCursorsOnFetch() throws Exception {
+		MyService service = getServiceProxy(new MyServiceImpl(), true);
+
+		exporterTime = 1000L;
+		service.streamedMethod(5);
+		exporterTime = 1100L;
+		Iterator<MyPojo> pojos = service.streamedMethod(5);
+		assertEquals(2, exporter.getOpenCursors());
+
+		// the first cursor expired, and is released when the second is fetched
+		exporter.setCursorTimeout(50);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(new MyPojo("foo" + i), pojos.next());
+		}
+		assertEquals(3, includeCount);
+		assertEquals(1, exporter.getOpenCursors());
+	}
+
+	@Test
+	public void testCrossContextWithBinaryPayloads() throws Exception {
+		MyService service = getServiceProxy(new MyServiceImpl(), true);
+
+		byte[] data = new byte[] { 1, 2, 3, 4 };
+		ByteBuffer result = service.binaryMethod(data, new ByteArrayInputStream(new byte[] { 2 }));
+		assertEquals(1, includeCount);
+		assertTrue(result.isReadOnly());
+		assertEquals(2, result.remaining());
+		assertEquals(1, result.get(0));
+
+		// the bytes were never copied
+		data[0] = 9;
+		assertEquals(9, result.get(0));
+	}
+
+	@Test
+	public void testCrossContextWithoutStackTraces() throws Exception {
+		MyService impl = mock(MyService.class);
+		when(impl.aMethod("foo")).thenThrow(new FooException());
+		when(impl.anotherMethod(any(MyPojo.class))).thenThrow(new IllegalStateException());
+		MyService service = getServiceProxy(impl, true);
+		exporter.setDeclaredExceptionTransport(ExceptionTransport.NO_STACK_TRACE);
+
+		try {
+			service.aMethod("foo");
+			fail();
+		} catch (FooException e) {
+			assertEquals(0, e.getStackTrace().length);
+		}
+		try {
+			service.anotherMethod(new MyPojo("foo"));
+			fail();
+		} catch (IllegalStateException e) {
+			assertTrue(e.getStackTrace().length > 0);
+		}
+	}
+
+	@Test
+	public void testCrossContextWithCompactExceptions() throws Exception {
+		MyService impl = mock(MyService.class);
+		FooException exception = new FooException();
+		when(impl.aMethod("foo")).thenThrow(exception);
+		MyService service = getServiceProxy(impl, false);
+		exporter.setDeclaredExceptionTransport(ExceptionTransport.COMPACT);
+
+		try {
+			service.aMethod("foo");
+			fail();
+		} catch (FooException e) {
+			// rebuilt in this context rather than handed over
+			assertThat(e, not(sameInstance(exception)));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testCrossContextWithoutRequest() throws Exception {
+		MyService service = getServiceProxy(new MyServiceImpl(), true);
+		RequestAndResponseHolder.resetHttpServletRequestAndResponse();
+
+		service.aMethod("foo");
+	}
+
+	@Test
+	public void testCrossContextWithMetrics() throws Exception {
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+		factory.setMetricsEnabled(true);
+		factory.setMBeanServer(mbeanServer);
+		factory.afterPropertiesSet();
+		MyService service = (MyService) factory.getObject();
+
+		service.aMethod("bar");
+		service.aMethod("bar");
+
+		MethodMetrics metrics = factory.getMetrics().getMethodMetrics(MyService.class.getMethod("aMethod", String.class));
+		assertEquals(2, metrics.getCallCount());
+		assertEquals(0, metrics.getErrorCount());
+		assertTrue(metrics.getRequestMeanBytes() > 0);
+		assertFalse(mbeanServer.queryNames(new ObjectName(InvocationMetrics.DOMAIN + ":*"), null).isEmpty());
+
+		factory.destroy();
+		assertTrue(mbeanServer.queryNames(new ObjectName(InvocationMetrics.DOMAIN + ":*"), null).isEmpty());
+	}
+
+	@Test
+	public void testMetricsOfCallersInDifferentContexts() throws Exception {
+		MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+		ObjectName all = new ObjectName(InvocationMetrics.DOMAIN + ":*");
+		CrossContextProxyBeanFactory first = getProxyFactory(new MyServiceImpl(), true);
+		first.setMetricsEnabled(true);
+		first.setMBeanServer(mbeanServer);
+		first.afterPropertiesSet();
+		int registered = mbeanServer.queryNames(all, null).size();
+
+		CrossContextProxyBeanFactory second = getProxyFactory(new MyServiceImpl(), true);
+		when(context.getContextPath()).thenReturn("/caller");
+		second.setMetricsEnabled(true);
+		second.setMBeanServer(mbeanServer);
+		second.afterPropertiesSet();
+		assertEquals(2 * registered, mbeanServer.queryNames(all, null).size());
+
+		first.destroy();
+		second.destroy();
+		assertTrue(mbeanServer.queryNames(all, null).isEmpty());
+	}
+
+	@Test
+	public void testMetricsRegistrationIsRolledBack() throws Exception {
+		MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+		ObjectName all = new ObjectName(InvocationMetrics.DOMAIN + ":*");
+		ObjectName taken = new ObjectName(InvocationMetrics.DOMAIN + ":type=" + CrossContextProxyBeanFactory.METRICS_TYPE + ",context=\"/\",serviceUrl=\""
+				+ CONTEXT_PATH + RELATIVE_PATH + "\",interface=" + MyService.class.getName() + ",method=\"other\"");
+		mbeanServer.registerMBean(new MethodMetrics("other"), taken);
+
+		CrossContextProxyBeanFactory factory = getProxyFactory(new MyServiceImpl(), true);
+		factory.setMetricsEnabled(true);
+		factory.setMBeanServer(mbeanServer);
+		factory.afterPropertiesSet();
+
+		assertEquals(Collections.singleton(taken), mbeanServer.queryNames(all, null));
 	}
 
 	@SuppressWarnings("unchecked")
@@ -91,8 +921,8 @@ public class CrossContextRemotingTest {
 		service.aMethod("bar"); // throws exception
 	}
 
-	private void testCrossContextRemoting(final boolean serialize) throws Exception {
-		MyService service = getServiceProxy(new MyServiceImpl(), serialize);
+	private void testCrossContextRemoting(final TransferMode transferMode) throws Exception {
+		MyService service = getServiceProxy(new MyServiceImpl(), transferMode);
 
 		MyPojo pojo = service.aMethod("bar");
 		assertEquals(pojo.foo, "bar");
@@ -100,27 +930,55 @@ public class CrossContextRemotingTest {
 		MyPojo pojo2 = new MyPojo("foo2");
 		MyPojo returnedPojo = service.anotherMethod(pojo2);
 		assertEquals(pojo2, returnedPojo);
-		// arguments and return values are, by default, serialized
-		if (serialize) {
-			assertThat(pojo2, not(sameInstance(returnedPojo)));
-		} else {
+		// arguments and return values are, by default, serialized. Both sides
+		// share the class loader here, so the automatic mode passes them by
+		// reference
+		if (transferMode == TransferMode.REFERENCE || transferMode == TransferMode.AUTO) {
 			assertThat(pojo2, sameInstance(returnedPojo));
+		} else {
+			assertThat(pojo2, not(sameInstance(returnedPojo)));
 		}
 	}
 
 	private MyService getServiceProxy(final MyService impl, final boolean serialize) throws Exception {
-		MockServletContext context = spy(new MockServletContext());
-		MockServletContext otherContext = spy(new MockServletContext());
-		MockHttpServletRequest request = spy(new MockHttpServletRequest());
+		return getServiceProxy(impl, serialize ? TransferMode.SERIALIZE : TransferMode.REFERENCE);
+	}
+
+	private MyService getServiceProxy(final MyService impl, final TransferMode transferMode) throws Exception {
+		Object object = getProxyFactory(impl, transferMode).getObject();
+
+		assertThat(object, is(MyService.class));
+		return (MyService) object;
+	}
+
+	private CrossContextProxyBeanFactory getProxyFactory(final MyService impl, final boolean serialize) throws Exception {
+		return getProxyFactory(impl, serialize ? TransferMode.SERIALIZE : TransferMode.REFERENCE);
+	}
+
+	private CrossContextProxyBeanFactory getProxyFactory(final MyService impl, final TransferMode transferMode) throws Exception {
+		context = spy(new MockServletContext());
+		otherContext = spy(new MockServletContext());
+		request = spy(new MockHttpServletRequest());
 		MockHttpServletResponse response = spy(new MockHttpServletResponse());
-		MockRequestDispatcher dispatcher = new MockRequestDispatcher(RELATIVE_PATH) {
+		exporter = new CrossContextServiceExporter() {
+			@Override
+			long currentTimeMillis() {
+				return exporterTime != null ? exporterTime : super.currentTimeMillis();
+			}
+		};
+		exporter.setServiceInterface(exporterInterface);
+		exporter.setService(impl);
+		exporter.setTransferMode(transferMode);
+		if (exporterCodec != null) {
+			exporter.setCodec(exporterCodec);
+		}
+		dispatcher = new MockRequestDispatcher(RELATIVE_PATH) {
 			@Override
 			public void include(ServletRequest request, ServletResponse response) {
+				includedRequest = request;
+				includedRequests.add(request);
+				includeCount++;
 				try {
-					CrossContextServiceExporter exporter = new CrossContextServiceExporter();
-					exporter.setServiceInterface(MyService.class);
-					exporter.setService(impl);
-					exporter.setSerialize(serialize);
 					exporter.handleRequest((HttpServletRequest) request, (HttpServletResponse) response);
 				} catch (Exception e) {
 					throw new RuntimeException(e);
@@ -138,13 +996,10 @@ public class CrossContextRemotingTest {
 		CrossContextProxyBeanFactory factory = new CrossContextProxyBeanFactory();
 		factory.setServiceUrl(CONTEXT_PATH + RELATIVE_PATH);
 		factory.setServiceInterface(MyService.class);
-		factory.setSerialize(serialize);
+		factory.setTransferMode(transferMode);
 		factory.setServletContext(context);
 		factory.afterPropertiesSet();
 
-		Object object = factory.getObject();
-
-		assertThat(object, is(MyService.class));
-		return (MyService) object;
+		return factory;
 	}
 }
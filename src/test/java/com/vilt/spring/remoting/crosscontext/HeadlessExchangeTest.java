@@ -0,0 +1,55 @@
+package com.vilt.spring.remoting.crosscontext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.Locale;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockServletContext;
+
+public class HeadlessExchangeTest {
+
+	private final HeadlessExchange exchange = new HeadlessExchange(new MockServletContext(), Locale.FRENCH);
+
+	@Test
+	public void testRequestDefaults() {
+		HttpServletRequest request = exchange.getRequest();
+
+		assertEquals(80, request.getServerPort());
+		assertEquals("localhost", request.getServerName());
+		assertEquals(-1, request.getContentLength());
+		assertEquals(-1, request.getIntHeader("X-Count"));
+		assertEquals(-1, request.getDateHeader("If-Modified-Since"));
+		assertEquals(0, request.getRemotePort());
+		assertNull(request.getHeader("Accept"));
+		assertFalse(request.getHeaderNames().hasMoreElements());
+		assertEquals(Locale.FRENCH, request.getLocale());
+	}
+
+	@Test
+	public void testRequestAttributes() {
+		HttpServletRequest request = exchange.getRequest();
+		request.setAttribute("foo", "bar");
+
+		assertEquals("bar", request.getAttribute("foo"));
+		request.setAttribute("foo", null);
+		assertNull(request.getAttribute("foo"));
+	}
+
+	@Test
+	public void testResponseDiscardsOutput() throws Exception {
+		HttpServletResponse response = exchange.getResponse();
+		response.getOutputStream().write(new byte[] { 1, 2, 3 });
+		response.getWriter().write("foo");
+
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals(0, response.getBufferSize());
+		assertFalse(response.isCommitted());
+	}
+
+}
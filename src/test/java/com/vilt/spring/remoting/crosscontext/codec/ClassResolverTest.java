@@ -0,0 +1,113 @@
+package com.vilt.spring.remoting.crosscontext.codec;
+
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.serializer.support.SerializationFailedException;
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+import com.vilt.spring.remoting.crosscontext.CursorChunk;
+import com.vilt.spring.remoting.crosscontext.CursorInvocation;
+
+public class ClassResolverTest {
+
+	private final ClassResolver resolver = new ClassResolver();
+
+	private final JdkSerializationCodec codec = new JdkSerializationCodec();
+
+	@Before
+	public void setUp() {
+		codec.getClassResolver().setAllowedClasses(new String[] { "java.util.ArrayList" });
+	}
+
+	@Test
+	public void testResolvedClassesAreCached() throws Exception {
+		ClassLoader classLoader = getClass().getClassLoader();
+		Class<?> clazz = resolver.resolve(ClassResolverTest.class.getName(), classLoader);
+
+		assertThat(clazz, sameInstance((Object) ClassResolverTest.class));
+		assertThat(resolver.resolve(ClassResolverTest.class.getName(), classLoader), sameInstance((Object) clazz));
+		assertThat(resolver.resolve("[I", classLoader), sameInstance((Object) int[].class));
+	}
+
+	@Test
+	public void testAllowList() {
+		resolver.setAllowedClasses(new String[] { "java.util.*", "com.example.Dto" });
+
+		assertTrue(resolver.isAllowed("java.util.ArrayList"));
+		assertTrue(resolver.isAllowed("java.util.concurrent.TimeUnit"));
+		assertTrue(resolver.isAllowed("com.example.Dto"));
+		assertTrue(resolver.isAllowed("[[Lcom.example.Dto;"));
+		assertTrue(resolver.isAllowed("java.lang.Integer"));
+		assertTrue(resolver.isAllowed("[J"));
+		assertTrue(resolver.isAllowed(RemoteInvocation.class.getName()));
+		assertFalse(resolver.isAllowed("com.example.DtoFactory"));
+		assertFalse(resolver.isAllowed("java.lang.reflect.Proxy"));
+		assertFalse(resolver.isAllowed("[Lcom.example.Other;"));
+	}
+
+	@Test
+	public void testCursorClassesAreAlwaysAllowed() {
+		resolver.setAllowedClasses(new String[] { "com.example.Dto" });
+
+		assertTrue(resolver.isAllowed(CursorInvocation.class.getName()));
+		assertTrue(resolver.isAllowed(CursorChunk.class.getName()));
+		assertTrue(resolver.isAllowed("java.util.ArrayList"));
+		assertFalse(resolver.isAllowed("java.util.LinkedList"));
+	}
+
+	@Test
+	public void testCodecAcceptsClassesOfTheAllowList() {
+		List<Object> list = new ArrayList<Object>();
+		list.add(Integer.valueOf(1));
+
+		assertEquals(list, CodecUtils.decode(codec, CodecUtils.encode(codec, list), getClass().getClassLoader()));
+	}
+
+	@Test
+	public void testCodecAcceptsExceptionsWithAnAllowList() {
+		RemoteInvocationResult result = new RemoteInvocationResult(new InvocationTargetException(new IllegalStateException("boom")));
+
+		RemoteInvocationResult decoded = (RemoteInvocationResult) CodecUtils.decode(codec, CodecUtils.encode(codec, result), getClass()
+				.getClassLoader());
+		assertEquals("boom", ((InvocationTargetException) decoded.getException()).getTargetException().getMessage());
+	}
+
+	@Test
+	public void testCompactCodecAppliesNewAllowList() {
+		CompactSerializationCodec compactCodec = new CompactSerializationCodec();
+		List<Object> list = new ArrayList<Object>();
+		list.add(new Date());
+		byte[] encoded = CodecUtils.encode(compactCodec, list);
+		assertEquals(list, CodecUtils.decode(compactCodec, encoded, getClass().getClassLoader()));
+
+		compactCodec.getClassResolver().setAllowedClasses(new String[] { "java.util.ArrayList" });
+		try {
+			CodecUtils.decode(compactCodec, encoded, getClass().getClassLoader());
+			fail("Date is no longer allowed");
+		} catch (SerializationFailedException e) {
+			// expected
+		}
+	}
+
+	@Test(expected = SerializationFailedException.class)
+	public void testCodecRejectsClassesOutOfTheAllowList() {
+		List<Object> list = new ArrayList<Object>();
+		list.add(new Date());
+
+		CodecUtils.decode(codec, CodecUtils.encode(codec, list), getClass().getClassLoader());
+	}
+
+}
@@ -0,0 +1,76 @@
+package com.vilt.spring.remoting.crosscontext.codec;
+
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class EncodingBufferTest {
+
+	@Test
+	public void testArrayIsReusedOnceReleased() {
+		EncodingBuffer buffer = EncodingBuffer.lease(0);
+		byte[] array = buffer.view().array();
+		buffer.release();
+
+		EncodingBuffer other = EncodingBuffer.lease(0);
+		assertThat(other.view().array(), sameInstance(array));
+		other.release();
+	}
+
+	@Test
+	public void testNestedLeasesGetDistinctArrays() {
+		EncodingBuffer outer = EncodingBuffer.lease(0);
+		EncodingBuffer inner = EncodingBuffer.lease(0);
+		assertThat(inner.view().array(), not(sameInstance(outer.view().array())));
+		inner.release();
+		outer.release();
+	}
+
+	@Test
+	public void testClearedPoolDoesNotReuseArrays() {
+		EncodingBuffer buffer = EncodingBuffer.lease(0);
+		byte[] array = buffer.view().array();
+		buffer.release();
+		EncodingBuffer.clearPool();
+
+		EncodingBuffer other = EncodingBuffer.lease(0);
+		assertThat(other.view().array(), not(sameInstance(array)));
+		other.release();
+	}
+
+	@Test
+	public void testViewDecodesWithoutCopy() {
+		CrossContextCodec codec = new JdkSerializationCodec();
+		EncodingBuffer buffer = EncodingBuffer.lease(64 * 1024);
+		try {
+			CodecUtils.encode(codec, "foo", buffer);
+			ByteBuffer view = buffer.view();
+			assertEquals(buffer.size(), view.remaining());
+			assertEquals("foo", CodecUtils.decode(codec, view, getClass().getClassLoader()));
+		} finally {
+			buffer.release();
+		}
+	}
+
+	@Test
+	public void testSizeHintsFollowBiggerPayloadsAndDecay() {
+		PayloadSizeHints hints = new PayloadSizeHints(2);
+		hints.record(0, 80000);
+		assertTrue(hints.get(0) >= 80000);
+		assertEquals(0, hints.get(1));
+
+		int hint = hints.get(0);
+		hints.record(0, 1000);
+		assertTrue(hints.get(0) < hint && hints.get(0) > 1000);
+
+		hints.record(-1, 500);
+		assertEquals(hints.get(-1), hints.get(7));
+	}
+
+}
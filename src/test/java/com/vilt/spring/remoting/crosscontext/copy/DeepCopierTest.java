@@ -0,0 +1,200 @@
+package com.vilt.spring.remoting.crosscontext.copy;
+
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class DeepCopierTest {
+
+	public static class Node {
+		private String name;
+		private int weight;
+		private Node next;
+		private List<Node> children = new ArrayList<Node>();
+		private Map<String, BigDecimal> values = new HashMap<String, BigDecimal>();
+		private long[] samples;
+		private TimeUnit unit;
+		private transient Object cache;
+	}
+
+	public static class Item implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final String name;
+
+		public Item(String name) {
+			this.name = name;
+		}
+	}
+
+	public static class ByNameDescending implements Comparator<Item>, Serializable {
+		private static final long serialVersionUID = 1L;
+
+		public int compare(Item o1, Item o2) {
+			return o2.name.compareTo(o1.name);
+		}
+	}
+
+	private final DeepCopier copier = new DeepCopier(getClass().getClassLoader());
+
+	@Test
+	public void testCopyPreservesCyclesAndSharedReferences() {
+		Node root = new Node();
+		root.name = "root";
+		root.weight = 3;
+		Node child = new Node();
+		child.name = "child";
+		child.next = root;
+		root.next = child;
+		root.children.add(child);
+		root.children.add(child);
+
+		Node copy = (Node) copier.copy(root);
+
+		assertThat(copy, not(sameInstance(root)));
+		assertEquals("root", copy.name);
+		assertEquals(3, copy.weight);
+		assertThat(copy.next, not(sameInstance(child)));
+		assertThat(copy.next.next, sameInstance(copy));
+		assertThat(copy.children.get(0), sameInstance(copy.next));
+		assertThat(copy.children.get(1), sameInstance(copy.next));
+	}
+
+	@Test
+	public void testCopyArraysAndMaps() {
+		Node node = new Node();
+		node.samples = new long[] { 1, 2, 3 };
+		node.values.put("a", new BigDecimal("1.5"));
+		node.unit = TimeUnit.SECONDS;
+		node.cache = new Object();
+
+		Node copy = (Node) copier.copy(node);
+
+		assertArrayEquals(node.samples, copy.samples);
+		assertThat(copy.samples, not(sameInstance(node.samples)));
+		assertThat(copy.values, not(sameInstance(node.values)));
+		assertThat(copy.values.get("a"), sameInstance(node.values.get("a")));
+		assertThat(copy.unit, sameInstance(TimeUnit.SECONDS));
+		assertEquals(null, copy.cache);
+	}
+
+	@Test
+	public void testCopyImmutableTypesByReference() {
+		String value = new String("value");
+		assertThat(copier.copy(value), sameInstance((Object) value));
+	}
+
+	@Test
+	public void testCopySortedCollections() {
+		TreeSet<String> set = new TreeSet<String>();
+		set.add("b");
+		set.add("a");
+
+		Object copy = copier.copy(set);
+
+		assertThat(copy, not(sameInstance((Object) set)));
+		assertEquals(set, copy);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testCopyPriorityQueuesWithTheirComparator() {
+		PriorityQueue<Item> queue = new PriorityQueue<Item>(11, new ByNameDescending());
+		queue.add(new Item("a"));
+		queue.add(new Item("c"));
+		queue.add(new Item("b"));
+
+		PriorityQueue<Item> copy = (PriorityQueue<Item>) copier.copy(queue);
+
+		assertThat(copy, not(sameInstance(queue)));
+		assertTrue(copy.comparator() instanceof ByNameDescending);
+		assertEquals("c", copy.poll().name);
+		assertEquals("b", copy.poll().name);
+		assertEquals("a", copy.poll().name);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testCopyLinkedHashMapsWithTheirAccessOrder() {
+		LinkedHashMap<String, String> map = new LinkedHashMap<String, String>(16, 0.75f, true);
+		map.put("a", "1");
+		map.put("b", "2");
+		map.put("c", "3");
+		map.get("a");
+
+		LinkedHashMap<String, String> copy = (LinkedHashMap<String, String>) copier.copy(map);
+
+		assertThat(copy, not(sameInstance(map)));
+		assertEquals(Arrays.asList("b", "c", "a"), new ArrayList<String>(copy.keySet()));
+		copy.get("b");
+		assertEquals(Arrays.asList("c", "a", "b"), new ArrayList<String>(copy.keySet()));
+	}
+
+	@Test
+	public void testShareGraphsOfSharedClasses() {
+		Node root = new Node();
+		root.next = root;
+		root.children.add(new Node());
+		root.values.put("a", BigDecimal.ONE);
+		root.samples = new long[] { 1 };
+		root.unit = TimeUnit.SECONDS;
+
+		assertThat(copier.share(root), sameInstance((Object) root));
+	}
+
+	@Test
+	public void testShareCopiesGraphsWithUninspectableObjects() {
+		List<Object> list = new ArrayList<Object>();
+		list.add(new IllegalArgumentException("message"));
+
+		Object copy = copier.share(list);
+
+		assertThat(copy, not(sameInstance((Object) list)));
+		assertEquals("message", ((IllegalArgumentException) ((List<?>) copy).get(0)).getMessage());
+	}
+
+	@Test
+	public void testHandOverBinaryPayloads() {
+		InputStream stream = new ByteArrayInputStream(new byte[] { 1 });
+		ByteBuffer buffer = ByteBuffer.wrap(new byte[] { 1, 2 });
+
+		ByteBuffer view = (ByteBuffer) copier.copy(buffer);
+
+		assertThat(copier.copy(stream), sameInstance((Object) stream));
+		assertTrue(view.isReadOnly());
+		assertEquals(buffer, view);
+		assertThat(copier.share(view), sameInstance((Object) view));
+	}
+
+	@Test
+	public void testCopyExceptionsBySerialization() {
+		IllegalArgumentException exception = new IllegalArgumentException("message");
+
+		IllegalArgumentException copy = (IllegalArgumentException) copier.copy(exception);
+
+		assertThat(copy, not(sameInstance(exception)));
+		assertEquals("message", copy.getMessage());
+	}
+
+}